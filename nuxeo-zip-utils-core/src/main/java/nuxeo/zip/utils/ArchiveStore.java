@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.transientstore.api.TransientStore;
+import org.nuxeo.ecm.core.transientstore.api.TransientStoreService;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * The archives of the imports running outside of the calling thread (distributed imports, jobs), kept in the
+ * <code>zipUtilsArchives</code> TransientStore so any node of the cluster can read them.
+ * <p>
+ * An archive is removed when its import is over (see <code>UnzipStatus</code> and <code>UnzipWork</code>). The TTL of
+ * the store (<code>nuxeo.zip.utils.archive.ttl</code>, in minutes) removes the ones of the imports which never ended,
+ * after a node crash for example.
+ *
+ * @since 2025.2
+ */
+public class ArchiveStore {
+
+    public static final String STORE_NAME = "zipUtilsArchives";
+
+    private ArchiveStore() {
+        // Static helpers only
+    }
+
+    /**
+     * Stores a copy of <code>archive</code>, for the import <code>key</code> (a command or job id).
+     */
+    public static void put(String key, Blob archive) {
+        getStore().putBlobs(key, Collections.singletonList(archive));
+    }
+
+    /**
+     * @throws NuxeoException if the archive is not in the store (removed, or expired)
+     */
+    public static Blob get(String key) {
+        List<Blob> blobs = getStore().getBlobs(key);
+        if (blobs == null || blobs.isEmpty()) {
+            throw new NuxeoException("The archive " + key + " is not available anymore");
+        }
+        return blobs.get(0);
+    }
+
+    public static void remove(String key) {
+        if (key != null) {
+            getStore().remove(key);
+        }
+    }
+
+    protected static TransientStore getStore() {
+        return Framework.getService(TransientStoreService.class).getStore(STORE_NAME);
+    }
+
+}
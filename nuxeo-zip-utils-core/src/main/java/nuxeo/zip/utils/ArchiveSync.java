@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+
+/**
+ * Compares the entries of an archive with the documents of a previous import of the same archive, so a new version of
+ * it only updates what changed.
+ * <p>
+ * Each document imported in sync mode is stamped with the name of its archive (the name of the root of the import,
+ * also used when the root is mapped to the target) and the path of its entry. The documents are the ones stamped with
+ * the name of the archive under the import root, loaded in one query and identified by the path of their entry: the
+ * documents of other archives imported in the same target are ignored. An entry is unchanged when the CRC and size
+ * read in the central directory are the ones stored on its document. Each entry checked is forgotten, so the
+ * documents left at the end are the ones whose entry is no longer in the archive.
+ * <p>
+ * Safe to share between the workers of a parallel import.
+ *
+ * @since 2025.2
+ */
+public class ArchiveSync {
+
+    public enum Status {
+        NEW, CHANGED, UNCHANGED
+    }
+
+    public static final String XPATH_ARCHIVE = "zipentry:archive";
+
+    public static final String XPATH_PATH = "zipentry:path";
+
+    protected static final String NXQL_ENTRIES = "SELECT ecm:uuid, " + XPATH_PATH + ", " + BlobDeduplicator.XPATH_CRC
+            + ", " + BlobDeduplicator.XPATH_SIZE + " FROM Document WHERE ecm:ancestorId = '%s' AND " + XPATH_ARCHIVE
+            + " = %s AND ecm:mixinType = '" + BlobDeduplicator.ZIP_ENTRY_FACET
+            + "' AND ecm:isProxy = 0 AND ecm:isVersion = 0 AND ecm:isTrashed = 0";
+
+    protected static class Imported {
+
+        protected final String id;
+
+        protected final Long crc;
+
+        protected final Long size;
+
+        protected Imported(String id, Long crc, Long size) {
+            this.id = id;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    protected final String archive;
+
+    // entry path => document
+    protected final Map<String, Imported> imported = new ConcurrentHashMap<>();
+
+    /**
+     * @param archive the name identifying the archive, the same for all its versions
+     */
+    public ArchiveSync(String archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Loads the documents imported from the archive under <code>root</code>.
+     */
+    public void load(CoreSession session, DocumentModel root) {
+
+        String query = String.format(NXQL_ENTRIES, root.getId(), NXQL.escapeString(archive));
+        try (IterableQueryResult rows = session.queryAndFetch(query, NXQL.NXQL)) {
+            for (Map<String, Serializable> row : rows) {
+                String path = (String) row.get(XPATH_PATH);
+                if (path != null) {
+                    imported.put(path, new Imported((String) row.get("ecm:uuid"),
+                            (Long) row.get(BlobDeduplicator.XPATH_CRC), (Long) row.get(BlobDeduplicator.XPATH_SIZE)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Stamps a document with the archive and the path of its entry, for the next syncs. The document is not saved.
+     */
+    public void setEntryInfo(DocumentModel doc, ZipEntry entry) {
+        BlobDeduplicator.setEntryInfo(doc, entry);
+        doc.setPropertyValue(XPATH_ARCHIVE, archive);
+        doc.setPropertyValue(XPATH_PATH, entry.getName());
+    }
+
+    /**
+     * Tells if the entry was imported already and did not change since.
+     */
+    public Status check(ZipEntry entry) {
+
+        Imported doc = imported.remove(entry.getName());
+        if (doc == null) {
+            return Status.NEW;
+        }
+        if (entry.getSize() >= 0 && Long.valueOf(entry.getCrc()).equals(doc.crc)
+                && Long.valueOf(entry.getSize()).equals(doc.size)) {
+            return Status.UNCHANGED;
+        }
+        return Status.CHANGED;
+    }
+
+    /**
+     * @return the documents whose entry was not checked: once all the entries are, the ones removed from the archive
+     */
+    public List<DocumentRef> getRemoved() {
+        List<DocumentRef> result = new ArrayList<>();
+        imported.values().forEach(doc -> result.add(new IdRef(doc.id)));
+        return result;
+    }
+
+}
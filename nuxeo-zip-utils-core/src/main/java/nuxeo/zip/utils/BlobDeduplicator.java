@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.DocumentBlobManager;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Finds, for an entry of the archive, a binary already stored in the repository, so the document of the entry
+ * references it instead of a new one.
+ * <p>
+ * Documents imported with deduplication have the <code>ZipEntry</code> facet, holding the CRC and size of their entry
+ * as read in the central directory. The documents with the same CRC and size are the candidates, read with one
+ * projection query, no document is loaded. Only when there is one, the MD5 digest of the entry is computed from the
+ * archive and compared with their <code>file:content/digest</code>: most entries are not read at all, and nothing is
+ * uploaded for a duplicate. Only the binaries imported with deduplication, with an MD5 digest (the default digest
+ * algorithm), can match.
+ *
+ * @since 2025.2
+ */
+public class BlobDeduplicator {
+
+    public static final String ZIP_ENTRY_FACET = "ZipEntry";
+
+    public static final String XPATH_CRC = "zipentry:crc";
+
+    public static final String XPATH_SIZE = "zipentry:size";
+
+    protected static final String BLOB_COLUMNS = "file:content/data, file:content/digest, file:content/length";
+
+    protected static final String NXQL_BY_CRC = "SELECT " + BLOB_COLUMNS + " FROM Document WHERE ecm:mixinType = '"
+            + ZIP_ENTRY_FACET + "' AND " + XPATH_CRC + " = %d AND " + XPATH_SIZE
+            + " = %d AND ecm:isProxy = 0 AND ecm:isVersion = 0";
+
+    /**
+     * Returns a blob referencing the stored binary with the same content as the entry, with the file name and mime
+     * type of <code>entryBlob</code>, or null if there is none.
+     *
+     * @param entryBlob the content of the entry, read only if there are candidates
+     */
+    public Blob findExisting(CoreSession session, ZipEntry entry, Blob entryBlob) throws IOException {
+
+        if (entry.getSize() < 0 || entry.getCrc() < 0) {
+            return null;
+        }
+        List<Map<String, Serializable>> candidates = new ArrayList<>();
+        String query = String.format(NXQL_BY_CRC, entry.getCrc(), entry.getSize());
+        try (IterableQueryResult rows = session.queryAndFetch(query, NXQL.NXQL)) {
+            for (Map<String, Serializable> row : rows) {
+                Long length = (Long) row.get("file:content/length");
+                if (row.get("file:content/data") != null && row.get("file:content/digest") != null
+                        && (length == null || length == entry.getSize())) {
+                    candidates.add(row);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        String digest;
+        try (InputStream in = entryBlob.getStream()) {
+            digest = DigestUtils.md5Hex(in);
+        }
+        for (Map<String, Serializable> row : candidates) {
+            if (digest.equals(row.get("file:content/digest"))) {
+                return reference(session, row, entryBlob);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the entry a document is imported from, for the next imports. The document is not saved.
+     */
+    public static void setEntryInfo(DocumentModel doc, ZipEntry entry) {
+        if (!doc.hasFacet(ZIP_ENTRY_FACET)) {
+            doc.addFacet(ZIP_ENTRY_FACET);
+        }
+        doc.setPropertyValue(XPATH_CRC, entry.getCrc());
+        doc.setPropertyValue(XPATH_SIZE, entry.getSize());
+    }
+
+    /**
+     * Returns a new blob for the binary of the row (same key, no copy) with the name of the entry.
+     */
+    protected Blob reference(CoreSession session, Map<String, Serializable> row, Blob entryBlob) throws IOException {
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = (String) row.get("file:content/data");
+        blobInfo.digest = (String) row.get("file:content/digest");
+        blobInfo.length = (Long) row.get("file:content/length");
+        blobInfo.filename = entryBlob.getFilename();
+        blobInfo.mimeType = entryBlob.getMimeType();
+        blobInfo.encoding = entryBlob.getEncoding();
+        return Framework.getService(DocumentBlobManager.class).readBlob(blobInfo, session.getRepositoryName());
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Reads the next blobs of a <code>ZipFolderish</code> export on a pool of threads while the current one is compressed,
+ * so the latency of a remote blob store (one request per blob) is not paid once per entry.
+ * <p>
+ * The entries are written in the order they are put, by the thread which puts them. The read-ahead is bounded by a
+ * number of blobs and by the bytes held in memory: when one of them is reached, the oldest entries are written before
+ * the next blob is read. A blob whose length is unknown or above the byte bound is not read ahead, it is written from
+ * its stream when its turn comes.
+ * <p>
+ * Only one thread puts the entries.
+ *
+ * @since 2025.2
+ */
+public class BlobPrefetcher implements AutoCloseable {
+
+    private static final Log log = LogFactory.getLog(BlobPrefetcher.class);
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * An entry waiting to be written: the bytes being read ahead, or the blob to stream.
+     */
+    protected static class Prefetched {
+
+        protected final String pathInZip;
+
+        protected final Blob blob;
+
+        protected final Future<byte[]> bytes;
+
+        protected final long length;
+
+        protected Prefetched(String pathInZip, Blob blob, Future<byte[]> bytes, long length) {
+            this.pathInZip = pathInZip;
+            this.blob = blob;
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    protected final ZipOutputStream zipOut;
+
+    protected final int blobs;
+
+    protected final long maxBytes;
+
+    protected final ExecutorService executor;
+
+    protected final Deque<Prefetched> pending = new ArrayDeque<>();
+
+    // Bytes read ahead and not written yet, only used by the writing thread
+    protected long bufferedBytes;
+
+    protected long waitNanos;
+
+    /**
+     * @param blobs the number of blobs read at the same time, and the maximum number of entries not written yet
+     * @param maxBytes the maximum number of bytes read ahead, {@link #DEFAULT_MAX_BYTES} if lower than 1
+     */
+    public BlobPrefetcher(ZipOutputStream zipOut, int blobs, long maxBytes) {
+        this.zipOut = zipOut;
+        this.blobs = Math.max(blobs, 1);
+        this.maxBytes = maxBytes < 1 ? DEFAULT_MAX_BYTES : maxBytes;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(this.blobs,
+                r -> new Thread(r, "ZipFolderish-prefetch-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * Adds the entry <code>pathInZip</code> with the content of <code>blob</code>, after the entries already put. It
+     * is written later, when the read-ahead is full or at {@link #flush()}.
+     */
+    public void put(Blob blob, String pathInZip) throws IOException {
+
+        long length = blob.getLength();
+        if (length < 0 || length > maxBytes) {
+            while (pending.size() >= blobs) {
+                writeNext();
+            }
+            pending.add(new Prefetched(pathInZip, blob, null, 0));
+            return;
+        }
+
+        while (pending.size() >= blobs || bufferedBytes + length > maxBytes) {
+            writeNext();
+        }
+        bufferedBytes += length;
+        pending.add(new Prefetched(pathInZip, null, executor.submit(() -> {
+            try (InputStream in = blob.getStream()) {
+                return in.readAllBytes();
+            }
+        }), length));
+    }
+
+    /**
+     * Writes all the entries put.
+     */
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        log.debug("Export waited " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms for the blobs");
+    }
+
+    protected void writeNext() throws IOException {
+
+        Prefetched next = pending.poll();
+        zipOut.putNextEntry(new ZipEntry(next.pathInZip));
+        if (next.bytes == null) {
+            try (InputStream in = next.blob.getStream()) {
+                IOUtils.copy(in, zipOut);
+            }
+        } else {
+            zipOut.write(get(next.bytes));
+            bufferedBytes -= next.length;
+        }
+        zipOut.closeEntry();
+    }
+
+    protected byte[] get(Future<byte[]> bytes) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return bytes.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while reading the blobs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new NuxeoException("Error while reading the blobs", e.getCause());
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.bulk.BulkAdminService;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Bulk mode of <code>UnzipToDocuments</code>: the documents created by the import carry context data flags telling
+ * the listeners which make each creation expensive (picture views, video conversions, thumbnails, indexing, ...) to
+ * skip them, then one Bulk Action per post-processing (thumbnails, picture views, video conversions, indexing) is run
+ * on the documents created or updated by the import.
+ * <p>
+ * Only the documents of the import are concerned: the listeners keep processing the other documents of the node.
+ * <p>
+ * When the DublinCore listener is disabled, the creator, creation and modification dates, and last contributor are
+ * set on the new documents, the modification date and last contributor on the updated ones.
+ * <p>
+ * The post-processing actions which are not registered (module not deployed, or action disabled) are ignored. Each
+ * action is run with a single Bulk command, whose query selects the documents of the import: the root of the import
+ * and its descendants modified since the import started (<code>dc:modified</code>, set by the DublinCore listener or
+ * by {@link #prepare}). No document id is kept in memory, whatever the size of the archive.
+ * <p>
+ * There is no context data flag for the listener checking the blob updates: it only compares the blobs of the
+ * documents which are saved, and is not part of the expensive processing deferred here.
+ *
+ * @since 2025.2
+ */
+public class BulkImportMode {
+
+    private static final Log log = LogFactory.getLog(BulkImportMode.class);
+
+    public static final String DISABLE_DUBLINCORE_LISTENER = "disableDublinCoreListener";
+
+    public static final String DISABLE_AUTO_INDEXING = "disableAutoIndexing";
+
+    public static final String DISABLE_THUMBNAIL_COMPUTATION = "disableThumbnailComputation";
+
+    public static final String DISABLE_PICTURE_VIEWS_GENERATION = "disablePictureViewsGenerationListener";
+
+    public static final String DISABLE_VIDEO_CONVERSIONS_GENERATION = "disableVideoConversionsGenerationListener";
+
+    public static final List<String> DEFAULT_FLAGS = Collections.unmodifiableList(Arrays.asList(
+            DISABLE_DUBLINCORE_LISTENER, DISABLE_AUTO_INDEXING, DISABLE_THUMBNAIL_COMPUTATION,
+            DISABLE_PICTURE_VIEWS_GENERATION, DISABLE_VIDEO_CONVERSIONS_GENERATION));
+
+    public static final List<String> DEFAULT_ACTIONS = Collections.unmodifiableList(
+            Arrays.asList("recomputeThumbnails", "recomputeViews", "recomputeVideoConversions", "index"));
+
+    protected static final String NXQL_IMPORTED = "SELECT * FROM Document"
+            + " WHERE (ecm:uuid = '%1$s' OR ecm:ancestorId = '%1$s') AND dc:modified >= TIMESTAMP '%2$s'"
+            + " AND ecm:isProxy = 0 AND ecm:isVersion = 0";
+
+    // Truncated to the second, the query then includes the documents modified during the first second
+    protected static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssxxx")
+                                                                                 .withZone(ZoneOffset.UTC);
+
+    protected final List<String> flags;
+
+    protected final List<String> actions;
+
+    public BulkImportMode() {
+        this(DEFAULT_FLAGS, DEFAULT_ACTIONS);
+    }
+
+    public BulkImportMode(List<String> flags, List<String> actions) {
+        this.flags = flags == null ? DEFAULT_FLAGS : flags;
+        this.actions = actions == null ? DEFAULT_ACTIONS : actions;
+    }
+
+    /**
+     * Parses a comma separated list of names, returns null if it is blank.
+     */
+    public static List<String> parseNames(String names) {
+        if (StringUtils.isBlank(names)) {
+            return null;
+        }
+        return Arrays.stream(names.split(","))
+                     .map(String::trim)
+                     .filter(StringUtils::isNotEmpty)
+                     .collect(Collectors.toList());
+    }
+
+    /**
+     * Sets the flags on a document about to be created or saved by the import.
+     */
+    public void prepare(CoreSession session, DocumentModel doc) {
+
+        flags.forEach(flag -> doc.putContextData(flag, Boolean.TRUE));
+        if (flags.contains(DISABLE_DUBLINCORE_LISTENER) && doc.hasSchema("dublincore")) {
+            // dc:modified also marks the document for the post-processing
+            String username = session.getPrincipal().getName();
+            Calendar now = Calendar.getInstance();
+            if (doc.getId() == null) {
+                doc.setPropertyValue("dc:creator", username);
+                doc.setPropertyValue("dc:created", now);
+            }
+            doc.setPropertyValue("dc:modified", now);
+            doc.setPropertyValue("dc:lastContributor", username);
+        }
+    }
+
+    /**
+     * Runs the post-processing actions on the documents of the import, after the import is committed.
+     *
+     * @param root the root of the import: the document created for the archive, or the target when the archive is
+     *            mapped to it
+     * @param startMillis when the import started
+     * @return the id of the Bulk command of each action, by action
+     */
+    public Map<String, String> schedulePostProcessing(CoreSession session, DocumentModel root, long startMillis) {
+
+        Map<String, String> commandIds = new LinkedHashMap<>();
+        List<String> registered = Framework.getService(BulkAdminService.class).getActions();
+        BulkService bulkService = Framework.getService(BulkService.class);
+        String query = String.format(NXQL_IMPORTED, root.getId(),
+                TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(startMillis)));
+
+        for (String action : actions) {
+            if (!registered.contains(action)) {
+                log.debug("Bulk import, post-processing action not registered: " + action);
+                continue;
+            }
+            BulkCommand command = new BulkCommand.Builder(action, query, session.getPrincipal().getName())
+                                                                 .repository(session.getRepositoryName())
+                                                                 .build();
+            commandIds.put(action, bulkService.submit(command));
+        }
+        log.info("Bulk import, post-processing: " + commandIds);
+
+        return commandIds;
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Decides when <code>UnzipToDocuments</code> commits the transaction. The number of entries (<code>commitModulo</code>)
+ * says nothing about the amount of work in the transaction, 100 entries can be 100 small files or 100 videos, so the
+ * transaction is also committed when:
+ * <ul>
+ * <li>the size of the extracted files reaches <code>maxBytes</code></li>
+ * <li>the transaction has been running for <code>maxSeconds</code></li>
+ * <li>the transaction has used <code>timeoutFraction</code> of the time it had to live when it started</li>
+ * </ul>
+ * A threshold of 0 disables the corresponding policy. Only the entry count is enabled by default, plus a safety net
+ * at 80% of the transaction timeout.
+ * <p>
+ * Files of at least <code>largeEntryThreshold</code> bytes are extracted to the blob provider outside of any
+ * transaction, see <code>UnzipToDocuments</code>.
+ *
+ * @since 2025.2
+ */
+public class CommitPolicy {
+
+    /**
+     * What caused a commit, reported in the <code>ImportSummary</code>. <code>CENTRAL_DIRECTORY</code> is the end of the
+     * single pass of a streaming import, before the entries which could not be streamed. <code>NESTED_ARCHIVE</code> is
+     * the end of the expansion of a nested archive, checkpointed as a whole.
+     */
+    public enum Trigger {
+        ENTRIES, BYTES, TIME, TRANSACTION_TIMEOUT, LARGE_ENTRY, FOLDERS, CENTRAL_DIRECTORY, NESTED_ARCHIVE, CANCELLED,
+        END
+    }
+
+    public static final double DEFAULT_TIMEOUT_FRACTION = 0.8;
+
+    public static final long DEFAULT_LARGE_ENTRY_THRESHOLD = 100L * 1024 * 1024;
+
+    protected int maxEntries = UnzipToDocuments.DEFAULT_COMMIT_MODULO;
+
+    protected long maxBytes = 0;
+
+    protected long maxSeconds = 0;
+
+    protected double timeoutFraction = DEFAULT_TIMEOUT_FRACTION;
+
+    protected long largeEntryThreshold = DEFAULT_LARGE_ENTRY_THRESHOLD;
+
+    /**
+     * The work done in the current transaction, one instance per import (or per worker in parallel mode).
+     */
+    public class Tracker {
+
+        protected int entries;
+
+        protected long bytes;
+
+        protected long startMillis;
+
+        protected int startTimeToLive;
+
+        public Tracker() {
+            reset();
+        }
+
+        public void add(long entryBytes) {
+            entries += 1;
+            bytes += Math.max(entryBytes, 0);
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedMillis() {
+            return System.currentTimeMillis() - startMillis;
+        }
+
+        /**
+         * To be called when a new transaction starts.
+         */
+        public void reset() {
+            entries = 0;
+            bytes = 0;
+            startMillis = System.currentTimeMillis();
+            startTimeToLive = TransactionHelper.getTransactionTimeToLive();
+        }
+
+        /**
+         * @return the policy which requires a commit now, null if the transaction can go on
+         */
+        public Trigger check() {
+            if (entries >= maxEntries) {
+                return Trigger.ENTRIES;
+            }
+            if (maxBytes > 0 && bytes >= maxBytes) {
+                return Trigger.BYTES;
+            }
+            if (maxSeconds > 0 && getElapsedMillis() >= maxSeconds * 1000) {
+                return Trigger.TIME;
+            }
+            // getTransactionTimeToLive() is -1 when there is no timeout
+            if (timeoutFraction > 0 && startTimeToLive > 0) {
+                int timeToLive = TransactionHelper.getTransactionTimeToLive();
+                if (timeToLive >= 0 && timeToLive <= startTimeToLive * (1 - timeoutFraction)) {
+                    return Trigger.TRANSACTION_TIMEOUT;
+                }
+            }
+            return null;
+        }
+    }
+
+    public Tracker newTracker() {
+        return new Tracker();
+    }
+
+    public boolean isLargeEntry(long size) {
+        return largeEntryThreshold > 0 && size >= largeEntryThreshold;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries <= 0 ? UnzipToDocuments.DEFAULT_COMMIT_MODULO : maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(maxBytes, 0);
+    }
+
+    public long getMaxSeconds() {
+        return maxSeconds;
+    }
+
+    public void setMaxSeconds(long maxSeconds) {
+        this.maxSeconds = Math.max(maxSeconds, 0);
+    }
+
+    public double getTimeoutFraction() {
+        return timeoutFraction;
+    }
+
+    public void setTimeoutFraction(double timeoutFraction) {
+        this.timeoutFraction = timeoutFraction < 0 || timeoutFraction >= 1 ? 0 : timeoutFraction;
+    }
+
+    public long getLargeEntryThreshold() {
+        return largeEntryThreshold;
+    }
+
+    public void setLargeEntryThreshold(long largeEntryThreshold) {
+        this.largeEntryThreshold = Math.max(largeEntryThreshold, 0);
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.AbstractBlob;
+
+/**
+ * Wraps a blob to compute the MD5 digest of its content while it is read, typically by a blob provider writing it: the
+ * content is read only once.
+ * <p>
+ * The digest is the one of the last stream returned, which must have been read to its end.
+ *
+ * @since 2025.2
+ */
+public class DigestingBlob extends AbstractBlob {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final transient Blob blob;
+
+    protected final transient MessageDigest md = DigestUtils.getMd5Digest();
+
+    public DigestingBlob(Blob blob) {
+        this.blob = blob;
+        setFilename(blob.getFilename());
+        setMimeType(blob.getMimeType());
+        setEncoding(blob.getEncoding());
+    }
+
+    @Override
+    public InputStream getStream() throws IOException {
+        // A provider may open the stream more than once, only the last one counts
+        md.reset();
+        return new DigestInputStream(blob.getStream(), md);
+    }
+
+    @Override
+    public long getLength() {
+        return blob.getLength();
+    }
+
+    /**
+     * @return the hex MD5 digest of the content read
+     */
+    public String getComputedDigest() {
+        return Hex.encodeHexString(md.digest());
+    }
+
+}
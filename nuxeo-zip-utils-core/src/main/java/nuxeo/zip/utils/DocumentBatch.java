@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+/**
+ * Documents waiting to be created, grouped by parent path, used by the batch mode of <code>UnzipToDocuments</code>.
+ * <p>
+ * The documents are fully built (title, blob, ...) before being added, and are created with one call to
+ * <code>CoreSession.createDocument(DocumentModel[])</code> per parent. Groups are created in the order their parent
+ * was first added, so a folder added to the batch is always created before the documents added inside it.
+ * <p>
+ * The name of a document is only final once it is created (the repository makes it unique in its parent): a callback
+ * can be passed to <code>add</code> to get the created document.
+ * <p>
+ * Not thread safe: in parallel mode each worker has its own batch.
+ *
+ * @since 2025.2
+ */
+public class DocumentBatch {
+
+    protected final Map<String, List<DocumentModel>> docsByParentPath = new LinkedHashMap<>();
+
+    protected final Map<String, List<Consumer<DocumentModel>>> callbacksByParentPath = new HashMap<>();
+
+    protected int size = 0;
+
+    public void add(String parentPath, DocumentModel doc) {
+        add(parentPath, doc, null);
+    }
+
+    /**
+     * @param onCreated called with the created document when the batch is flushed, null if none
+     */
+    public void add(String parentPath, DocumentModel doc, Consumer<DocumentModel> onCreated) {
+        docsByParentPath.computeIfAbsent(parentPath, k -> new ArrayList<>()).add(doc);
+        callbacksByParentPath.computeIfAbsent(parentPath, k -> new ArrayList<>()).add(onCreated);
+        size += 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates all the pending documents and empties the batch.
+     *
+     * @return the created documents
+     */
+    public List<DocumentModel> flush(CoreSession session) {
+
+        List<DocumentModel> created = new ArrayList<>(size);
+        for (Map.Entry<String, List<DocumentModel>> group : docsByParentPath.entrySet()) {
+            DocumentModel[] docs = session.createDocument(group.getValue().toArray(new DocumentModel[0]));
+            List<Consumer<DocumentModel>> callbacks = callbacksByParentPath.get(group.getKey());
+            // Returned in the order they were passed
+            for (int i = 0; i < docs.length; i++) {
+                if (callbacks.get(i) != null) {
+                    callbacks.get(i).accept(docs[i]);
+                }
+            }
+            created.addAll(Arrays.asList(docs));
+        }
+        docsByParentPath.clear();
+        callbacksByParentPath.clear();
+        size = 0;
+        return created;
+    }
+
+}
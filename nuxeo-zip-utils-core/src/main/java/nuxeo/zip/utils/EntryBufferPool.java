@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.AbstractBlob;
+
+/**
+ * Reads the small entries in memory, in a buffer reused by all the entries read by a thread, instead of streaming each
+ * of them (and allocating the buffers of the stream) when writing it to the blob provider. With hundreds of thousands
+ * of tiny files, the cost of an entry is mostly this overhead.
+ * <p>
+ * The blob returned by <code>read</code> is only valid until the next call on the same thread: it must be written to
+ * the blob provider right away. A thread which is not ending with the import (pooled) must call <code>release</code>
+ * when it is done.
+ *
+ * @since 2025.2
+ */
+public class EntryBufferPool {
+
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    protected final int threshold;
+
+    protected final ThreadLocal<byte[]> buffers;
+
+    /**
+     * @param threshold the maximum size of the entries read in memory
+     */
+    public EntryBufferPool(int threshold) {
+        this.threshold = threshold;
+        buffers = ThreadLocal.withInitial(() -> new byte[threshold]);
+    }
+
+    /**
+     * Tells if the entry, whose size is <code>size</code> (-1 if unknown), is read in memory.
+     */
+    public boolean accepts(long size) {
+        return size >= 0 && size <= threshold;
+    }
+
+    /**
+     * Reads the content of <code>blob</code> in the buffer of the thread, and returns a blob with the same file name
+     * and mime type reading the buffer.
+     *
+     * @throws IOException if the content is larger than the threshold, the size of the entry was wrong
+     */
+    public Blob read(Blob blob) throws IOException {
+        byte[] buffer = buffers.get();
+        int length;
+        try (InputStream in = blob.getStream()) {
+            length = IOUtils.read(in, buffer);
+            if (length == buffer.length && in.read() != -1) {
+                throw new IOException("Entry " + blob.getFilename() + " is larger than its size");
+            }
+        }
+        Blob buffered = new BufferBlob(buffer, length);
+        buffered.setFilename(blob.getFilename());
+        buffered.setMimeType(blob.getMimeType());
+        return buffered;
+    }
+
+    /**
+     * Releases the buffer of the current thread, a next <code>read</code> allocates a new one.
+     */
+    public void release() {
+        buffers.remove();
+    }
+
+    protected static class BufferBlob extends AbstractBlob {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final transient byte[] buffer;
+
+        protected final int length;
+
+        protected BufferBlob(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        @Override
+        public InputStream getStream() {
+            return new ByteArrayInputStream(buffer, 0, length);
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the files to import by path and size, using only what the central directory (or the header of an entry)
+ * tells, so the files which are not imported are never decompressed.
+ * <p>
+ * The patterns are globs: <code>*</code> matches any characters but <code>/</code>, <code>**</code> any characters,
+ * <code>**&#47;</code> any number of folders (none included), and <code>?</code> a single character. A pattern without
+ * <code>/</code> is matched against the file name only (<code>*.tif</code>), the other ones against the whole path in
+ * the archive (<code>images/**&#47;*.tif</code>).
+ * <p>
+ * A file is imported when it matches one of the includes (or there are none), none of the excludes, and its size is
+ * within the bounds (a file whose size is unknown is not filtered on its size).
+ *
+ * @since 2025.2
+ */
+public class EntryFilter {
+
+    protected final List<String> includes;
+
+    protected final List<String> excludes;
+
+    protected final long minSize;
+
+    protected final long maxSize;
+
+    protected final List<Pattern> includePatterns = new ArrayList<>();
+
+    protected final List<Pattern> excludePatterns = new ArrayList<>();
+
+    /**
+     * @param includes the globs of the files to import, null or empty for all of them
+     * @param excludes the globs of the files not to import, null or empty for none
+     * @param minSize the minimum size of the files to import, 0 for no minimum
+     * @param maxSize the maximum size of the files to import, 0 for no maximum
+     */
+    public EntryFilter(List<String> includes, List<String> excludes, long minSize, long maxSize) {
+        this.includes = includes == null ? Collections.emptyList() : new ArrayList<>(includes);
+        this.excludes = excludes == null ? Collections.emptyList() : new ArrayList<>(excludes);
+        this.minSize = Math.max(minSize, 0);
+        this.maxSize = Math.max(maxSize, 0);
+        this.includes.forEach(glob -> includePatterns.add(toPattern(glob)));
+        this.excludes.forEach(glob -> excludePatterns.add(toPattern(glob)));
+    }
+
+    /**
+     * Builds a filter from comma separated lists of globs.
+     */
+    public static EntryFilter parse(String includes, String excludes, long minSize, long maxSize) {
+        return new EntryFilter(splitGlobs(includes), splitGlobs(excludes), minSize, maxSize);
+    }
+
+    protected static List<String> splitGlobs(String globs) {
+        List<String> result = new ArrayList<>();
+        if (globs != null) {
+            for (String glob : globs.split(",")) {
+                if (!glob.isBlank()) {
+                    result.add(glob.trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tells if the filter selects all the files.
+     */
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty() && minSize == 0 && maxSize == 0;
+    }
+
+    /**
+     * @param path the path of the file in the archive
+     * @param size its size, -1 if unknown
+     */
+    public boolean accepts(String path, long size) {
+
+        if (size >= 0 && (size < minSize || maxSize > 0 && size > maxSize)) {
+            return false;
+        }
+        if (!includePatterns.isEmpty() && includePatterns.stream().noneMatch(p -> p.matcher(path).matches())) {
+            return false;
+        }
+        return excludePatterns.stream().noneMatch(p -> p.matcher(path).matches());
+    }
+
+    /**
+     * Converts a glob to a regular expression matching the whole path.
+     */
+    protected static Pattern toPattern(String glob) {
+
+        // The file name, in any folder
+        StringBuilder regex = new StringBuilder(glob.contains("/") ? "" : "(?:.*/)?");
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (i > literalStart) {
+                regex.append(Pattern.quote(glob.substring(literalStart, i)));
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if (glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 1;
+            } else {
+                regex.append("[^/]*");
+            }
+            literalStart = i + 1;
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+
+    public List<String> getIncludes() {
+        return Collections.unmodifiableList(includes);
+    }
+
+    public List<String> getExcludes() {
+        return Collections.unmodifiableList(excludes);
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+
+/**
+ * Import-scoped cache used by <code>UnzipToDocuments</code> to resolve folders without querying the repository for
+ * every segment of every entry.
+ * <p>
+ * It maps the directory paths of the archive to the <code>DocumentRef</code> of the folderish documents, and holds,
+ * for each target folder, the names of its children. The children of a folder are loaded (one query) the first time
+ * they are needed, and only for folders that existed before the import: a folder created by the import starts empty.
+ * <p>
+ * Safe to share between the workers of a parallel import.
+ *
+ * @since 2025.2
+ */
+public class ImportFolderCache {
+
+    // No filter on purpose: any child, even trashed or hidden, holds its name in the folder
+    protected static final String NXQL_CHILDREN = "SELECT ecm:uuid, ecm:name, dc:title, file:content/name FROM Document"
+            + " WHERE ecm:parentId = '%s'";
+
+    protected final Map<String, DocumentRef> folders = new ConcurrentHashMap<>();
+
+    protected final Map<DocumentRef, Children> children = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the folderish document for this directory of the archive, or null if it was not resolved yet.
+     */
+    public DocumentRef getFolder(String archivePath) {
+        return folders.get(archivePath);
+    }
+
+    /**
+     * Caches the folderish document for a directory of the archive. When <code>created</code> is true, the folder is
+     * known to have no children yet.
+     */
+    public void putFolder(String archivePath, DocumentRef ref, boolean created) {
+        folders.put(archivePath, ref);
+        if (created) {
+            children.putIfAbsent(ref, new Children());
+        }
+    }
+
+    /**
+     * Returns the child of <code>parentRef</code> whose name is <code>name</code>, or null if there is none.
+     */
+    public DocumentRef getChild(CoreSession session, DocumentRef parentRef, String name) {
+        return getChildren(session, parentRef).byName.get(name);
+    }
+
+    /**
+     * Tells if <code>parentRef</code> has a child with this name, title or file name: this is when the FileManager may
+     * find a document to overwrite.
+     */
+    public boolean hasChildNamed(CoreSession session, DocumentRef parentRef, String name) {
+        Children c = getChildren(session, parentRef);
+        return c.byName.containsKey(name) || c.otherNames.contains(name);
+    }
+
+    /**
+     * Records a document created (or updated) by the import.
+     */
+    public void putChild(DocumentRef parentRef, String name, String title, DocumentRef ref) {
+        Children c = children.get(parentRef);
+        if (c == null) {
+            // Not loaded yet, it will be when needed
+            return;
+        }
+        c.byName.put(name, ref);
+        if (title != null) {
+            c.otherNames.add(title);
+        }
+    }
+
+    protected Children getChildren(CoreSession session, DocumentRef parentRef) {
+        return children.computeIfAbsent(parentRef, ref -> loadChildren(session, ref));
+    }
+
+    protected Children loadChildren(CoreSession session, DocumentRef parentRef) {
+
+        Children result = new Children();
+        String id = parentRef instanceof IdRef ? (String) parentRef.reference() : session.getDocument(parentRef).getId();
+
+        try (IterableQueryResult rows = session.queryAndFetch(String.format(NXQL_CHILDREN, id), NXQL.NXQL)) {
+            for (Map<String, Serializable> row : rows) {
+                result.byName.put((String) row.get("ecm:name"), new IdRef((String) row.get("ecm:uuid")));
+                addIfNotNull(result.otherNames, row.get("dc:title"));
+                addIfNotNull(result.otherNames, row.get("file:content/name"));
+            }
+        }
+
+        return result;
+    }
+
+    protected static void addIfNotNull(Set<String> set, Serializable value) {
+        if (value != null) {
+            set.add((String) value);
+        }
+    }
+
+    protected static class Children {
+
+        protected final Map<String, DocumentRef> byName = new ConcurrentHashMap<>();
+
+        protected final Set<String> otherNames = ConcurrentHashMap.newKeySet();
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Extracts the entries of a zip file (inflate, then upload to the blob provider) on a pool of threads, ahead of the
+ * transactional thread which creates the documents in the order of the <code>ImportPlan</code>. Each thread reads the
+ * archive through its own <code>ZipFile</code>, so the entries are inflated in parallel.
+ * <p>
+ * The number of entries submitted and not created yet is bounded by the capacity: when it is reached, nothing more is
+ * extracted until the transactional thread catches up. The statistics give, for both stages, the queue depth and the
+ * throughput, and which one is the bottleneck.
+ * <p>
+ * Only the transactional thread submits and takes the entries.
+ *
+ * @since 2025.2
+ */
+public class ImportPipeline implements AutoCloseable {
+
+    private static final Log log = LogFactory.getLog(ImportPipeline.class);
+
+    public static final int DEFAULT_CAPACITY_PER_THREAD = 4;
+
+    /**
+     * Extracts an entry, reading it from the <code>ZipFile</code> of the thread.
+     */
+    @FunctionalInterface
+    public interface Extractor {
+        Blob extract(ZipFile zipFile) throws IOException;
+    }
+
+    /**
+     * The counters of a stage. The queue of the extract stage holds the entries submitted and not started yet, the one
+     * of the create stage the entries extracted and not taken yet.
+     */
+    protected static class Stage {
+
+        protected final AtomicInteger queueDepth = new AtomicInteger();
+
+        protected final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+        protected final AtomicLong entries = new AtomicLong();
+
+        protected final AtomicLong bytes = new AtomicLong();
+
+        protected final AtomicLong busyNanos = new AtomicLong();
+
+        protected void enqueue() {
+            maxQueueDepth.accumulateAndGet(queueDepth.incrementAndGet(), Math::max);
+        }
+
+        protected void dequeue() {
+            queueDepth.decrementAndGet();
+        }
+
+        protected void done(long entryBytes, long nanos) {
+            entries.incrementAndGet();
+            bytes.addAndGet(Math.max(entryBytes, 0));
+            busyNanos.addAndGet(nanos);
+        }
+
+        protected Map<String, Object> toMap(long elapsedNanos) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("queueDepth", queueDepth.get());
+            map.put("maxQueueDepth", maxQueueDepth.get());
+            map.put("entries", entries.get());
+            map.put("bytes", bytes.get());
+            map.put("busyMillis", TimeUnit.NANOSECONDS.toMillis(busyNanos.get()));
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            map.put("entriesPerSecond", Math.round(entries.get() / seconds));
+            map.put("bytesPerSecond", Math.round(bytes.get() / seconds));
+            return map;
+        }
+    }
+
+    protected final File archive;
+
+    protected final int threads;
+
+    protected final int capacity;
+
+    protected final ExecutorService executor;
+
+    protected final ThreadLocal<ZipFile> zipFiles = new ThreadLocal<>();
+
+    protected final List<ZipFile> openedZipFiles = new CopyOnWriteArrayList<>();
+
+    protected final Map<Integer, Future<Blob>> pending = new HashMap<>();
+
+    protected final Stage extract = new Stage();
+
+    protected final Stage create = new Stage();
+
+    protected final AtomicLong waitNanos = new AtomicLong();
+
+    protected final long startNanos = System.nanoTime();
+
+    protected long takenNanos;
+
+    /**
+     * @param capacity the maximum number of entries submitted and not created yet, <code>threads</code> times
+     *            {@link #DEFAULT_CAPACITY_PER_THREAD} if lower than 1
+     */
+    public ImportPipeline(File archive, int threads, int capacity) {
+        this.archive = archive;
+        this.threads = Math.max(threads, 1);
+        this.capacity = capacity < 1 ? this.threads * DEFAULT_CAPACITY_PER_THREAD : capacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(this.threads,
+                r -> new Thread(r, "UnzipToDocuments-extract-" + threadCount.incrementAndGet()));
+    }
+
+    public boolean isFull() {
+        return pending.size() >= capacity;
+    }
+
+    /**
+     * Submits the extraction of the entry at <code>index</code> in the plan.
+     *
+     * @param size the size of the entry, for the statistics
+     */
+    public void submit(int index, long size, Extractor extractor) {
+        extract.enqueue();
+        pending.put(index, executor.submit(() -> {
+            extract.dequeue();
+            long start = System.nanoTime();
+            Blob blob = extractor.extract(getZipFile());
+            extract.done(size, System.nanoTime() - start);
+            create.enqueue();
+            return blob;
+        }));
+    }
+
+    /**
+     * Waits for the extraction of the entry at <code>index</code> and returns its blob, to create its document.
+     *
+     * @return the extracted blob, null if the entry was not submitted
+     */
+    public Blob take(int index) throws IOException {
+        Future<Blob> future = pending.remove(index);
+        if (future == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            Blob blob = future.get();
+            create.dequeue();
+            return blob;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while extracting the entries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new NuxeoException("Error while extracting the entries", e.getCause());
+        } finally {
+            takenNanos = System.nanoTime();
+            waitNanos.addAndGet(takenNanos - start);
+        }
+    }
+
+    /**
+     * Records the creation of the document of the entry last taken.
+     */
+    public void created(long size) {
+        create.done(size, System.nanoTime() - takenNanos);
+    }
+
+    protected ZipFile getZipFile() throws IOException {
+        ZipFile zipFile = zipFiles.get();
+        if (zipFile == null) {
+            zipFile = new ZipFile(archive);
+            openedZipFiles.add(zipFile);
+            zipFiles.set(zipFile);
+        }
+        return zipFile;
+    }
+
+    /**
+     * Returns the statistics of the stages. The bottleneck is the extract stage when the transactional thread spent more
+     * time waiting for the entries than creating the documents, else the create stage.
+     */
+    public Map<String, Object> getStats() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", threads);
+        stats.put("capacity", capacity);
+        stats.put("extract", extract.toMap(elapsedNanos));
+        Map<String, Object> createStats = create.toMap(elapsedNanos);
+        createStats.put("waitMillis", TimeUnit.NANOSECONDS.toMillis(waitNanos.get()));
+        stats.put("create", createStats);
+        stats.put("bottleneck", waitNanos.get() > create.busyNanos.get() ? "extract" : "create");
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Extraction threads still running, closing the archive anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ZipFile zipFile : openedZipFiles) {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                log.warn("Cannot close " + archive, e);
+            }
+        }
+    }
+
+}
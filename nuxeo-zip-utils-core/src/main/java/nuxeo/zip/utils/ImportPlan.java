@@ -0,0 +1,116 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+
+/**
+ * The plan of an import, built from the central directory before anything is created.
+ * <p>
+ * The folders are all the directories of the archive, declared by a directory entry or only implied by the path of a
+ * file (some archives have no directory entries at all). They are listed in the order they first appear, a folder
+ * always after its parent, so they can be created in a single pass.
+ * <p>
+ * The files are grouped by parent directory (in the order the directories first appear, and in archive order within a
+ * directory), so the documents of a folder are created one after the other.
+ * <p>
+ * The plan only depends on the central directory: the position of a file in <code>getFiles()</code> is stable and is
+ * used by checkpoints and by the ranges of a distributed import.
+ *
+ * @since 2025.2
+ */
+public class ImportPlan {
+
+    protected final List<String> folders;
+
+    protected final List<ZipEntry> files;
+
+    protected ImportPlan(List<String> folders, List<ZipEntry> files) {
+        this.folders = Collections.unmodifiableList(folders);
+        this.files = Collections.unmodifiableList(files);
+    }
+
+    /**
+     * @param entries the entries of the archive, in central directory order
+     * @param ignore tells which entries must not be imported (by name)
+     */
+    public static ImportPlan of(List<? extends ZipEntry> entries, Predicate<String> ignore) {
+        return of(entries, ignore, null);
+    }
+
+    /**
+     * Same as <code>of(entries, ignore)</code>, importing only the files selected by <code>filter</code>. With a
+     * filter, the directory entries are ignored: the folders are only the ones containing a selected file.
+     *
+     * @param filter the files to import, null for all of them
+     * @since 2025.2
+     */
+    public static ImportPlan of(List<? extends ZipEntry> entries, Predicate<String> ignore, EntryFilter filter) {
+
+        Set<String> folders = new LinkedHashSet<>();
+        Map<String, List<ZipEntry>> filesByParent = new LinkedHashMap<>();
+
+        for (ZipEntry entry : entries) {
+            if (ignore.test(entry.getName())) {
+                continue;
+            }
+            if (filter != null && (entry.isDirectory() || !filter.accepts(entry.getName(), entry.getSize()))) {
+                continue;
+            }
+            String[] pathParts = entry.getName().split("/");
+            int folderDepth = entry.isDirectory() ? pathParts.length : pathParts.length - 1;
+            String path = "";
+            for (int i = 0; i < folderDepth; i++) {
+                path = i == 0 ? pathParts[i] : path + "/" + pathParts[i];
+                folders.add(path);
+            }
+            if (!entry.isDirectory()) {
+                filesByParent.computeIfAbsent(path, k -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        List<ZipEntry> files = new ArrayList<>();
+        filesByParent.values().forEach(files::addAll);
+
+        return new ImportPlan(new ArrayList<>(folders), files);
+    }
+
+    /**
+     * @return the paths of the directories, without trailing "/", parents first
+     */
+    public List<String> getFolders() {
+        return folders;
+    }
+
+    /**
+     * @return the file entries, grouped by parent directory
+     */
+    public List<ZipEntry> getFiles() {
+        return files;
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nuxeo.zip.utils.CommitPolicy.Trigger;
+
+/**
+ * What an import did, commit by commit: the policy which triggered each commit, with the number of entries, the bytes
+ * extracted and the duration of the transaction.
+ * <p>
+ * Thread safe, the workers of a parallel import share the summary.
+ *
+ * @since 2025.2
+ */
+public class ImportSummary {
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static class Commit {
+
+        public final Trigger trigger;
+
+        public final int entries;
+
+        public final long bytes;
+
+        public final long durationMillis;
+
+        public Commit(Trigger trigger, int entries, long bytes, long durationMillis) {
+            this.trigger = trigger;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.durationMillis = durationMillis;
+        }
+    }
+
+    protected final List<Commit> commits = new ArrayList<>();
+
+    protected long largeEntries;
+
+    protected long smallEntries;
+
+    protected long deduplicatedEntries;
+
+    protected long deduplicatedBytes;
+
+    protected long unchangedEntries;
+
+    protected long trashedEntries;
+
+    protected long nestedArchives;
+
+    protected Map<String, String> postProcessing = new LinkedHashMap<>();
+
+    protected Map<String, Object> pipeline;
+
+    public synchronized void addCommit(Trigger trigger, CommitPolicy.Tracker tracker) {
+        commits.add(new Commit(trigger, tracker.getEntries(), tracker.getBytes(), tracker.getElapsedMillis()));
+    }
+
+    public synchronized void addLargeEntry() {
+        largeEntries += 1;
+    }
+
+    /**
+     * Records an entry read in memory, see <code>EntryBufferPool</code>.
+     */
+    public synchronized void addSmallEntry() {
+        smallEntries += 1;
+    }
+
+    /**
+     * Records an entry which referenced an existing binary instead of being uploaded.
+     */
+    public synchronized void addDeduplicated(long bytes) {
+        deduplicatedEntries += 1;
+        deduplicatedBytes += Math.max(bytes, 0);
+    }
+
+    /**
+     * Records an entry skipped in sync mode, its document being up to date.
+     */
+    public synchronized void addUnchanged() {
+        unchangedEntries += 1;
+    }
+
+    /**
+     * Records documents trashed in sync mode, their entry being no longer in the archive.
+     */
+    public synchronized void addTrashed(long count) {
+        trashedEntries += count;
+    }
+
+    public synchronized void addNestedArchive() {
+        nestedArchives += 1;
+    }
+
+    /**
+     * Records the Bulk command run on the imported documents in bulk mode, by action.
+     */
+    public synchronized void setPostProcessing(Map<String, String> commandIds) {
+        postProcessing = new LinkedHashMap<>(commandIds);
+    }
+
+    /**
+     * Records the statistics of the stages of the pipeline, when the import used one.
+     */
+    public synchronized void setPipeline(Map<String, Object> stats) {
+        pipeline = stats;
+    }
+
+    /**
+     * @return the statistics of the stages of the pipeline, null if the import did not use one
+     */
+    public synchronized Map<String, Object> getPipeline() {
+        return pipeline;
+    }
+
+    public synchronized Map<String, String> getPostProcessing() {
+        return new LinkedHashMap<>(postProcessing);
+    }
+
+    public synchronized List<Commit> getCommits() {
+        return new ArrayList<>(commits);
+    }
+
+    public synchronized Map<Trigger, Integer> getCommitsByTrigger() {
+        Map<Trigger, Integer> result = new EnumMap<>(Trigger.class);
+        commits.forEach(commit -> result.merge(commit.trigger, 1, Integer::sum));
+        return result;
+    }
+
+    public synchronized long getEntries() {
+        return commits.stream().mapToLong(commit -> commit.entries).sum();
+    }
+
+    public synchronized long getBytes() {
+        return commits.stream().mapToLong(commit -> commit.bytes).sum();
+    }
+
+    public synchronized long getLargeEntries() {
+        return largeEntries;
+    }
+
+    public synchronized long getSmallEntries() {
+        return smallEntries;
+    }
+
+    public synchronized long getDeduplicatedEntries() {
+        return deduplicatedEntries;
+    }
+
+    /**
+     * @return the bytes of the entries referencing an existing binary thanks to deduplication
+     */
+    public synchronized long getDeduplicatedBytes() {
+        return deduplicatedBytes;
+    }
+
+    public synchronized long getUnchangedEntries() {
+        return unchangedEntries;
+    }
+
+    public synchronized long getTrashedEntries() {
+        return trashedEntries;
+    }
+
+    public synchronized long getNestedArchives() {
+        return nestedArchives;
+    }
+
+    public synchronized String toJSON() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("entries", getEntries());
+        json.put("bytes", getBytes());
+        json.put("largeEntries", largeEntries);
+        json.put("smallEntries", smallEntries);
+        json.put("deduplicatedEntries", deduplicatedEntries);
+        json.put("deduplicatedBytes", deduplicatedBytes);
+        json.put("unchangedEntries", unchangedEntries);
+        json.put("trashedEntries", trashedEntries);
+        json.put("nestedArchives", nestedArchives);
+        json.put("postProcessing", postProcessing);
+        if (pipeline != null) {
+            json.put("pipeline", pipeline);
+        }
+        json.put("commitsByTrigger", getCommitsByTrigger());
+        json.put("commits", commits);
+        try {
+            return MAPPER.writeValueAsString(json);
+        } catch (JsonProcessingException e) {
+            throw new NuxeoException("Cannot serialize the import summary", e);
+        }
+    }
+
+}
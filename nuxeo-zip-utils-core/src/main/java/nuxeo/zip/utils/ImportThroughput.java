@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * The throughput measured by the recent imports of the cluster, saved in a KeyValueStore by
+ * <code>UnzipToDocuments</code>, to estimate the duration of the next ones (see <code>UnzipPreflight</code>).
+ * <p>
+ * Each import updates an exponential moving average of its entries and bytes per second, so the last imports weigh
+ * the most.
+ *
+ * @since 2025.2
+ */
+public class ImportThroughput {
+
+    protected static final String KEY = "unzip:throughput";
+
+    // Weight of the last import in the average
+    protected static final double ALPHA = 0.3;
+
+    protected static final String SEPARATOR = ";";
+
+    protected final double entriesPerSecond;
+
+    protected final double bytesPerSecond;
+
+    public ImportThroughput(double entriesPerSecond, double bytesPerSecond) {
+        this.entriesPerSecond = entriesPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return the throughput of the recent imports, or null if none was measured yet
+     */
+    public static ImportThroughput load() {
+
+        String value = getStore().getString(KEY);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+
+        String[] parts = value.split(SEPARATOR, -1);
+        return new ImportThroughput(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]));
+    }
+
+    /**
+     * Adds the measures of an import to the average. Imports too short to be measured are ignored.
+     */
+    public static void record(long entries, long bytes, long durationMillis) {
+
+        if (entries <= 0 || durationMillis <= 0) {
+            return;
+        }
+        double seconds = durationMillis / 1000.0;
+        double entriesPerSecond = entries / seconds;
+        double bytesPerSecond = bytes / seconds;
+
+        ImportThroughput previous = load();
+        if (previous != null) {
+            entriesPerSecond = ALPHA * entriesPerSecond + (1 - ALPHA) * previous.entriesPerSecond;
+            bytesPerSecond = ALPHA * bytesPerSecond + (1 - ALPHA) * previous.bytesPerSecond;
+        }
+        getStore().put(KEY, entriesPerSecond + SEPARATOR + bytesPerSecond);
+    }
+
+    /**
+     * Estimates the duration of an import: the import is bound either by the number of documents to create or by the
+     * bytes to extract, whichever takes longer at the measured throughput.
+     */
+    public long estimateSeconds(long entries, long bytes) {
+        double byEntries = entriesPerSecond > 0 ? entries / entriesPerSecond : 0;
+        double byBytes = bytesPerSecond > 0 ? bytes / bytesPerSecond : 0;
+        return (long) Math.ceil(Math.max(byEntries, byBytes));
+    }
+
+    protected static KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(UnzipCheckpoint.KV_STORE_NAME);
+    }
+
+    public double getEntriesPerSecond() {
+        return entriesPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * Limits the expansion of the archives found inside the imported archive (zips of zips, tars of zips, ...), so a
+ * nested archive bomb cannot fill the disk or keep a worker busy for hours:
+ * <ul>
+ * <li><code>maxDepth</code>: archives are expanded down to this number of nesting levels, deeper ones are imported as
+ * files</li>
+ * <li><code>maxBytes</code>: total number of bytes extracted from all the nested archives of the import</li>
+ * <li><code>maxRatio</code>: bytes extracted from a nested archive divided by its size</li>
+ * </ul>
+ * The bytes are counted while they are decompressed, whether the entries they belong to are imported or skipped (see
+ * <code>StreamingArchive.open(InputStream, String, UnaryOperator)</code>): when a limit is exceeded, the read fails and
+ * so does the import. 0 disables a limit.
+ * <p>
+ * Safe to share between the workers of a parallel import.
+ *
+ * @since 2025.2
+ */
+public class NestedArchiveLimits {
+
+    public static final int DEFAULT_MAX_DEPTH = 3;
+
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+
+    public static final int DEFAULT_MAX_RATIO = 100;
+
+    protected final int maxDepth;
+
+    protected final long maxBytes;
+
+    protected final int maxRatio;
+
+    protected final AtomicLong totalBytes = new AtomicLong();
+
+    public NestedArchiveLimits() {
+        this(DEFAULT_MAX_DEPTH, DEFAULT_MAX_BYTES, DEFAULT_MAX_RATIO);
+    }
+
+    public NestedArchiveLimits(int maxDepth, long maxBytes, int maxRatio) {
+        this.maxDepth = maxDepth;
+        this.maxBytes = maxBytes;
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * Tells if an archive at this nesting level (1 for an archive in the imported one) can be expanded.
+     */
+    public boolean canExpand(int depth) {
+        return depth <= maxDepth && (maxBytes <= 0 || totalBytes.get() < maxBytes);
+    }
+
+    /**
+     * Returns the filter counting the bytes decompressed from a nested archive, to open it with
+     * <code>StreamingArchive.open(InputStream, String, UnaryOperator)</code>.
+     *
+     * @param size the size of the nested archive, negative if unknown (no ratio check)
+     */
+    public UnaryOperator<InputStream> newStreamFilter(String archivePath, long size) {
+
+        AtomicLong archiveBytes = new AtomicLong();
+        return in -> new ProxyInputStream(in) {
+
+            @Override
+            protected void afterRead(int n) throws IOException {
+                if (n <= 0) {
+                    return;
+                }
+                long total = totalBytes.addAndGet(n);
+                if (maxBytes > 0 && total > maxBytes) {
+                    throw new IOException(
+                            "Nested archives extract more than " + maxBytes + " bytes, at " + archivePath);
+                }
+                long extracted = archiveBytes.addAndGet(n);
+                if (maxRatio > 0 && size > 0 && extracted > size * maxRatio) {
+                    throw new IOException("The nested archive " + archivePath + " has a compression ratio above "
+                            + maxRatio);
+                }
+            }
+        };
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+}
@@ -0,0 +1,434 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CloseableFile;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.impl.blob.AbstractBlob;
+
+/**
+ * Reads archives in a single pass: the formats detected by <code>DetectArchiveTypeOp</code> (tar, cpio, ar, arj,
+ * dump, possibly compressed, as in tar.gz or tar.zst), 7z, single files compressed with gzip, bzip2, xz, zstd, ...
+ * (<code>report.pdf.gz</code>), seen as an archive with one entry, and zip files which must not be copied to a local
+ * file to be read with <code>java.util.zip.ZipFile</code> (streaming import, nested archives).
+ * <p>
+ * There is no central directory: the entries are read in the order of the archive, and the content of an entry can
+ * only be read until <code>getNextEntry()</code> is called again.
+ *
+ * @since 2025.2
+ */
+public class StreamingArchive implements Closeable {
+
+    protected static final Set<String> ZIP_TYPES = new HashSet<>(
+            Arrays.asList(ArchiveStreamFactory.ZIP, ArchiveStreamFactory.JAR));
+
+    protected static final Set<String> ZIP_MIME_TYPES = new HashSet<>(Arrays.asList("application/zip",
+            "application/x-zip", "application/x-zip-compressed", "application/java-archive"));
+
+    protected static final List<String> ZIP_EXTENSIONS = Arrays.asList(".zip", ".jar");
+
+    protected static final Set<String> OTHER_MIME_TYPES = new HashSet<>(Arrays.asList("application/x-tar",
+            "application/gzip", "application/x-gzip", "application/x-compressed-tar", "application/x-bzip2",
+            "application/x-xz", "application/zstd", "application/x-7z-compressed", "application/x-cpio"));
+
+    protected static final List<String> OTHER_EXTENSIONS = Arrays.asList(".tar", ".tgz", ".gz", ".tbz2", ".bz2",
+            ".txz", ".xz", ".zst", ".7z", ".cpio", ".ar");
+
+    protected static final List<String> NESTED_EXTENSIONS = Arrays.asList(".zip", ".tar", ".tgz", ".tar.gz", ".tbz2",
+            ".tar.bz2", ".txz", ".tar.xz", ".tar.zst");
+
+    protected InputStream stream;
+
+    protected ArchiveInputStream archiveStream;
+
+    protected SevenZFile sevenZFile;
+
+    // Temporary copy of a 7z blob with no file (stored, in memory), deleted when closed
+    protected CloseableFile sevenZCopy;
+
+    // Single compressed file
+    protected ArchiveEntry singleEntry;
+
+    protected ArchiveEntry currentEntry;
+
+    // Content of the current entry, shared by getEntryBlob() and openEntry()
+    protected BufferedInputStream entryBuffer;
+
+    // Zip entries are inflated by the archive stream itself, so their content is filtered instead of the stream
+    protected UnaryOperator<InputStream> entryFilter = UnaryOperator.identity();
+
+    // The zip entries not read are drained through the filter when moving to the next one
+    protected boolean drainEntries;
+
+    /**
+     * Tells if the blob is a zip, to be read with <code>ZipFile</code> (compressed zips are not). Decided from the mime
+     * type, then from the file name, the first bytes are read only when both are unknown or generic
+     * (<code>application/octet-stream</code>, no extension, ...).
+     */
+    public static boolean isZip(Blob blob) throws IOException {
+        String mimeType = StringUtils.lowerCase(blob.getMimeType());
+        if (ZIP_MIME_TYPES.contains(mimeType)) {
+            return true;
+        }
+        if (OTHER_MIME_TYPES.contains(mimeType)) {
+            return false;
+        }
+        String name = StringUtils.lowerCase(blob.getFilename());
+        if (name != null && ZIP_EXTENSIONS.stream().anyMatch(name::endsWith)) {
+            return true;
+        }
+        if (name != null && OTHER_EXTENSIONS.stream().anyMatch(name::endsWith)) {
+            return false;
+        }
+        try (InputStream in = new BufferedInputStream(blob.getStream())) {
+            return ZIP_TYPES.contains(ArchiveStreamFactory.detect(in));
+        } catch (ArchiveException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens the archive, reading its format in its first bytes. The blob is only read through its stream, even for a
+     * zip file, except for a 7z archive, read from its file, or from a temporary copy when the blob has none.
+     * <p>
+     * The zip entries whose size is only known after their content (stored, not compressed, with a data descriptor)
+     * cannot be read, see <code>canReadEntryData()</code>.
+     *
+     * @throws NuxeoException if the blob is not a supported archive or compressed file
+     */
+    public static StreamingArchive open(Blob blob) throws IOException {
+
+        InputStream in = new BufferedInputStream(blob.getStream());
+        StreamingArchive archive = null;
+        try {
+            archive = open(in, blob.getFilename(), false, null);
+            if (archive == null && ArchiveStreamFactory.SEVEN_Z.equals(detectArchiveType(in))) {
+                // Random access format
+                in.close();
+                archive = new StreamingArchive();
+                archive.sevenZCopy = blob.getCloseableFile();
+                archive.sevenZFile = new SevenZFile(archive.sevenZCopy.getFile());
+            }
+        } catch (IOException | RuntimeException e) {
+            if (archive != null) {
+                archive.close();
+            } else {
+                in.close();
+            }
+            throw new IOException("Cannot read the archive " + blob.getFilename(), e);
+        }
+
+        if (archive == null) {
+            in.close();
+            throw new NuxeoException("Unsupported archive format: " + blob.getFilename());
+        }
+        return archive;
+    }
+
+    /**
+     * Opens the archive read from <code>in</code>, which must support mark/reset (7z archives, which cannot be read
+     * from a stream, are not supported).
+     *
+     * @param filename the name of the archive, to name the entry of a single compressed file
+     * @return the archive, reading <code>in</code> and closing it when closed, or null when <code>in</code> is not an
+     *         archive, in which case it is reset to where it was
+     */
+    public static StreamingArchive open(InputStream in, String filename) throws IOException {
+        return open(in, filename, null);
+    }
+
+    /**
+     * Same as <code>open(InputStream, String)</code>, applying <code>filter</code> to the decompressed stream the
+     * archive is read from, to count or limit what is extracted: every byte decompressed is seen, including the ones of
+     * the entries which are skipped. For a zip archive, whose entries are inflated by the archive reader, the filter is
+     * applied to the content of each entry, and the entries which are not read are drained through it.
+     *
+     * @param filter null for none
+     */
+    public static StreamingArchive open(InputStream in, String filename, UnaryOperator<InputStream> filter)
+            throws IOException {
+        // There is no central directory to read the entries which cannot be streamed from
+        return open(in, filename, true, filter);
+    }
+
+    protected static StreamingArchive open(InputStream in, String filename,
+            boolean allowStoredEntriesWithDataDescriptor, UnaryOperator<InputStream> filter) throws IOException {
+
+        StreamingArchive archive = new StreamingArchive();
+        archive.stream = in;
+
+        String compressor = null;
+        try {
+            compressor = CompressorStreamFactory.detect(in);
+            InputStream decompressed = CompressorStreamFactory.getSingleton()
+                                                              .createCompressorInputStream(compressor, in);
+            in = new BufferedInputStream(filter == null ? decompressed : filter.apply(decompressed));
+            archive.stream = in;
+        } catch (CompressorException e) {
+            // Not compressed
+        }
+
+        String archiveType = detectArchiveType(in);
+        if (archiveType == null) {
+            if (compressor == null) {
+                return null;
+            }
+            archive.singleEntry = new SingleFileEntry(getUncompressedName(filename));
+        } else if (ArchiveStreamFactory.SEVEN_Z.equals(archiveType)) {
+            if (compressor != null) {
+                archive.close();
+                throw new IOException("Compressed 7z archives are not supported: " + filename);
+            }
+            return null;
+        } else {
+            try {
+                if (ArchiveStreamFactory.ZIP.equals(archiveType)) {
+                    archive.archiveStream = new ZipArchiveInputStream(in, StandardCharsets.UTF_8.name(), true,
+                            allowStoredEntriesWithDataDescriptor);
+                    if (filter != null) {
+                        archive.entryFilter = filter;
+                        archive.drainEntries = true;
+                    }
+                } else {
+                    if (filter != null && compressor == null) {
+                        in = new BufferedInputStream(filter.apply(in));
+                        archive.stream = in;
+                    }
+                    archive.archiveStream = new ArchiveStreamFactory().createArchiveInputStream(archiveType, in);
+                }
+            } catch (ArchiveException e) {
+                archive.close();
+                throw new IOException("Cannot read the archive " + filename, e);
+            }
+        }
+
+        return archive;
+    }
+
+    /**
+     * Tells if the file name is the one of an archive which can be expanded in a single pass: zip, tar and compressed
+     * tar. Only the name is checked, office documents and jars, which are zip files, are not archives.
+     */
+    public static boolean isArchiveName(String filename) {
+        String name = StringUtils.lowerCase(filename);
+        return name != null && NESTED_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    /**
+     * photos.zip => photos, photos.tar.gz => photos
+     */
+    public static String getBaseName(String filename) {
+        return StringUtils.removeEndIgnoreCase(FilenameUtils.getBaseName(filename), ".tar");
+    }
+
+    protected static String detectArchiveType(InputStream in) {
+        try {
+            return ArchiveStreamFactory.detect(in);
+        } catch (ArchiveException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the next entry, null at the end of the archive
+     */
+    public ArchiveEntry getNextEntry() throws IOException {
+
+        if (drainEntries && currentEntry != null && !currentEntry.isDirectory()
+                && archiveStream.canReadEntryData(currentEntry)) {
+            // Inflated anyway to reach the next entry, or skipped without being inflated: counted both ways
+            try (InputStream in = getEntryStream()) {
+                IOUtils.consume(in);
+            }
+        }
+        entryBuffer = null;
+        if (archiveStream != null) {
+            currentEntry = archiveStream.getNextEntry();
+        } else if (sevenZFile != null) {
+            currentEntry = sevenZFile.getNextEntry();
+        } else {
+            currentEntry = singleEntry;
+            singleEntry = null;
+        }
+
+        return currentEntry;
+    }
+
+    /**
+     * Tells if the content of the current entry can be read in this single pass. When it cannot (zip entry stored with
+     * a data descriptor, unsupported compression method or encryption), it must be skipped.
+     */
+    public boolean canReadEntryData() {
+        return archiveStream == null || archiveStream.canReadEntryData(currentEntry);
+    }
+
+    public boolean isSingleFile() {
+        return archiveStream == null && sevenZFile == null;
+    }
+
+    /**
+     * Returns the content of the current entry. The stream must not be used after the next call to
+     * <code>getNextEntry()</code>, closing it does not close the archive.
+     */
+    public InputStream getEntryStream() throws IOException {
+        if (currentEntry == null) {
+            throw new IllegalStateException("No current entry");
+        }
+        InputStream in;
+        if (sevenZFile != null) {
+            in = sevenZFile.getInputStream((SevenZArchiveEntry) currentEntry);
+        } else {
+            in = archiveStream != null ? archiveStream : stream;
+        }
+        return entryFilter.apply(CloseShieldInputStream.wrap(in));
+    }
+
+    /**
+     * Opens the current entry as an archive, see <code>open(InputStream, String, UnaryOperator)</code>: when it is not
+     * one, its content can still be read with <code>getEntryBlob()</code>.
+     *
+     * @param filter null for none
+     */
+    public StreamingArchive openEntry(UnaryOperator<InputStream> filter) throws IOException {
+        return open(getEntryBuffer(), FilenameUtils.getName(StringUtils.removeEnd(currentEntry.getName(), "/")),
+                filter);
+    }
+
+    protected BufferedInputStream getEntryBuffer() throws IOException {
+        if (entryBuffer == null) {
+            entryBuffer = new BufferedInputStream(getEntryStream());
+        }
+        return entryBuffer;
+    }
+
+    /**
+     * Returns a blob reading the content of the current entry. It can be read only once, before the next call to
+     * <code>getNextEntry()</code>: typically, to be written to the blob provider. When the archive does not store the
+     * size of the entry (single compressed file), the length is the number of bytes read so far.
+     */
+    public Blob getEntryBlob() {
+        ArchiveEntry entry = currentEntry;
+        Blob blob = new AbstractBlob() {
+
+            private static final long serialVersionUID = 1L;
+
+            private transient CountingInputStream counter;
+
+            @Override
+            public InputStream getStream() throws IOException {
+                counter = new CountingInputStream(CloseShieldInputStream.wrap(getEntryBuffer()));
+                return counter;
+            }
+
+            @Override
+            public long getLength() {
+                if (entry.getSize() != ArchiveEntry.SIZE_UNKNOWN || counter == null) {
+                    return entry.getSize();
+                }
+                return counter.getByteCount();
+            }
+        };
+        blob.setFilename(FilenameUtils.getName(StringUtils.removeEnd(entry.getName(), "/")));
+
+        return blob;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sevenZFile != null) {
+            sevenZFile.close();
+        }
+        if (sevenZCopy != null) {
+            sevenZCopy.close();
+        }
+        if (archiveStream != null) {
+            archiveStream.close();
+        } else if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * report.pdf.gz => report.pdf
+     */
+    protected static String getUncompressedName(String filename) {
+        if (StringUtils.isBlank(filename)) {
+            return "file";
+        }
+        String name = FilenameUtils.getName(filename);
+        return FilenameUtils.getExtension(name).isEmpty() ? name : FilenameUtils.removeExtension(name);
+    }
+
+    protected static class SingleFileEntry implements ArchiveEntry {
+
+        protected final String name;
+
+        protected SingleFileEntry(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getSize() {
+            return SIZE_UNKNOWN;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public Date getLastModifiedDate() {
+            return null;
+        }
+    }
+
+}
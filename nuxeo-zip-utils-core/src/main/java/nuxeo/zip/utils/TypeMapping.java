@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Maps the files of an archive to a document type and the xpath of the blob, so <code>UnzipToDocuments</code> creates
+ * the documents directly instead of asking the FileManager to select an importer plugin for every entry.
+ * <p>
+ * Each rule maps a key to <code>Type</code> or <code>Type:xpath</code> (xpath is <code>file:content</code> by
+ * default). The key is either a file extension (<code>pdf</code>, case insensitive, without the dot), a mime type
+ * (<code>image/png</code>) or a family of mime types (<code>image/*</code>), looked up in this order. Example:
+ *
+ * <pre>
+ * log=File
+ * tif=Scan:scan:original
+ * image/*=Picture
+ * </pre>
+ *
+ * Files which match no rule are imported by the FileManager.
+ *
+ * @since 2025.2
+ */
+public class TypeMapping {
+
+    public static final String DEFAULT_XPATH = "file:content";
+
+    public static class Target {
+
+        public final String type;
+
+        public final String xpath;
+
+        public Target(String type, String xpath) {
+            this.type = type;
+            this.xpath = xpath;
+        }
+    }
+
+    protected final Map<String, String> rules;
+
+    protected final Map<String, Target> byExtension = new HashMap<>();
+
+    protected final Map<String, Target> byMimeType = new HashMap<>();
+
+    public TypeMapping(Map<String, String> rules) {
+        this.rules = new HashMap<>(rules);
+        rules.forEach((key, value) -> {
+            if (StringUtils.isBlank(key) || StringUtils.isBlank(value)) {
+                return;
+            }
+            key = key.trim().toLowerCase(Locale.ROOT);
+            String type = StringUtils.substringBefore(value, ":").trim();
+            String xpath = value.contains(":") ? StringUtils.substringAfter(value, ":").trim() : DEFAULT_XPATH;
+            Target target = new Target(type, xpath);
+            if (key.contains("/")) {
+                byMimeType.put(key, target);
+            } else {
+                byExtension.put(StringUtils.removeStart(key, "."), target);
+            }
+        });
+    }
+
+    public Map<String, String> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return byExtension.isEmpty() && byMimeType.isEmpty();
+    }
+
+    /**
+     * @param mimeType the mime type of the file, may be null
+     * @return where to import the file, or null if no rule matches
+     */
+    public Target resolve(String filename, String mimeType) {
+
+        Target target = byExtension.get(FilenameUtils.getExtension(filename).toLowerCase(Locale.ROOT));
+        if (target == null && mimeType != null) {
+            String mt = mimeType.toLowerCase(Locale.ROOT);
+            target = byMimeType.get(mt);
+            if (target == null) {
+                target = byMimeType.get(StringUtils.substringBefore(mt, "/") + "/*");
+            }
+        }
+
+        return target;
+    }
+
+}
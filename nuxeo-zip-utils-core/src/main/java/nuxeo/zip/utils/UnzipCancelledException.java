@@ -0,0 +1,37 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Thrown when an import run by an <code>UnzipWork</code> stops because its job was cancelled. What was imported before
+ * is committed.
+ *
+ * @since 2025.2
+ */
+public class UnzipCancelledException extends NuxeoException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnzipCancelledException(String jobId) {
+        super("Unzip job " + jobId + " cancelled");
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * The state of an import at its last commit, saved in a KeyValueStore by <code>UnzipToDocuments</code> so a failed
+ * import can be resumed.
+ * <p>
+ * The key is built from the target document and the digest of the archive, so resuming only happens for the same
+ * archive imported in the same place. The value holds the position of the last committed entry in the file list of
+ * the <code>ImportPlan</code> (the folders first, then the files grouped by folder, not the central directory order),
+ * the id of the root document and the archive digest.
+ *
+ * @since 2025.2
+ */
+public class UnzipCheckpoint {
+
+    public static final String KV_STORE_NAME = "zipUtils";
+
+    protected static final String KEY_PREFIX = "unzip:checkpoint:";
+
+    // Checkpoints of imports that are never resumed are eventually removed
+    protected static final long TTL_SECONDS = 7 * 24 * 3600;
+
+    protected static final String SEPARATOR = ";";
+
+    protected final int entryIndex;
+
+    protected final String rootDocumentId;
+
+    protected final String archiveDigest;
+
+    public UnzipCheckpoint(int entryIndex, String rootDocumentId, String archiveDigest) {
+        this.entryIndex = entryIndex;
+        this.rootDocumentId = rootDocumentId;
+        this.archiveDigest = archiveDigest;
+    }
+
+    public static String getKey(String parentId, String archiveDigest) {
+        return KEY_PREFIX + parentId + ":" + archiveDigest;
+    }
+
+    /**
+     * @return the checkpoint, or null if there is none for this key
+     */
+    public static UnzipCheckpoint load(String key) {
+
+        String value = getStore().getString(key);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+
+        String[] parts = value.split(SEPARATOR, -1);
+        return new UnzipCheckpoint(Integer.parseInt(parts[0]), StringUtils.defaultIfEmpty(parts[1], null), parts[2]);
+    }
+
+    public void save(String key) {
+        String value = entryIndex + SEPARATOR + StringUtils.defaultString(rootDocumentId) + SEPARATOR + archiveDigest;
+        getStore().put(key, value, TTL_SECONDS);
+    }
+
+    public static void remove(String key) {
+        getStore().put(key, (String) null);
+    }
+
+    protected static KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(KV_STORE_NAME);
+    }
+
+    /**
+     * @return the position of the last committed entry in the file list of the <code>ImportPlan</code>
+     */
+    public int getEntryIndex() {
+        return entryIndex;
+    }
+
+    public String getRootDocumentId() {
+        return rootDocumentId;
+    }
+
+    public String getArchiveDigest() {
+        return archiveDigest;
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * Status of an import run by an <code>UnzipWork</code>, shared through the <code>zipUtils</code> KeyValueStore: its
+ * state, its progress (reported by <code>UnzipToDocuments</code> at most every second) and whether it was asked to
+ * stop.
+ *
+ * @since 2025.2
+ */
+public class UnzipJob {
+
+    public static final String STATE_SCHEDULED = "scheduled";
+
+    public static final String STATE_RUNNING = "running";
+
+    public static final String STATE_COMPLETED = "completed";
+
+    public static final String STATE_FAILED = "failed";
+
+    public static final String STATE_CANCELLED = "cancelled";
+
+    protected static final String KEY_PREFIX = "unzip:job:";
+
+    protected static final long TTL_SECONDS = 7 * 24 * 3600;
+
+    protected static final String STATE = "state";
+
+    protected static final String FILENAME = "filename";
+
+    protected static final String USERNAME = "username";
+
+    protected static final String ROOT_DOCUMENT_ID = "rootDocumentId";
+
+    protected static final String TOTAL_ENTRIES = "totalEntries";
+
+    protected static final String TOTAL_BYTES = "totalBytes";
+
+    protected static final String ENTRIES = "entries";
+
+    protected static final String BYTES = "bytes";
+
+    protected static final String SUBMITTED = "submitted";
+
+    protected static final String STARTED = "started";
+
+    protected static final String COMPLETED = "completed";
+
+    protected static final String CANCEL_REQUESTED = "cancelRequested";
+
+    protected static final String ERROR = "error";
+
+    protected static final String SUMMARY = "summary";
+
+    private UnzipJob() {
+        // Static helpers only
+    }
+
+    /**
+     * @param username the user who started the import, the only one who can cancel it besides the administrators
+     */
+    public static void init(String jobId, String filename, String username) {
+        KeyValueStore store = getStore();
+        store.put(key(jobId, FILENAME), filename, TTL_SECONDS);
+        store.put(key(jobId, USERNAME), username, TTL_SECONDS);
+        store.put(key(jobId, SUBMITTED), System.currentTimeMillis(), TTL_SECONDS);
+        store.put(key(jobId, STATE), STATE_SCHEDULED, TTL_SECONDS);
+    }
+
+    public static void started(String jobId) {
+        KeyValueStore store = getStore();
+        store.put(key(jobId, STARTED), System.currentTimeMillis(), TTL_SECONDS);
+        store.put(key(jobId, STATE), STATE_RUNNING, TTL_SECONDS);
+    }
+
+    /**
+     * Sets the number of files of the archive and their size, when they are known before the import (zip files).
+     */
+    public static void setTotals(String jobId, long entries, long bytes) {
+        KeyValueStore store = getStore();
+        store.put(key(jobId, TOTAL_ENTRIES), entries, TTL_SECONDS);
+        store.put(key(jobId, TOTAL_BYTES), bytes, TTL_SECONDS);
+    }
+
+    public static void progress(String jobId, long entries, long bytes) {
+        KeyValueStore store = getStore();
+        store.put(key(jobId, ENTRIES), entries, TTL_SECONDS);
+        store.put(key(jobId, BYTES), bytes, TTL_SECONDS);
+    }
+
+    /**
+     * @param summary the JSON summary of the import, see <code>ImportSummary</code>
+     */
+    public static void completed(String jobId, String rootDocumentId, String summary) {
+        KeyValueStore store = getStore();
+        store.put(key(jobId, ROOT_DOCUMENT_ID), rootDocumentId, TTL_SECONDS);
+        store.put(key(jobId, SUMMARY), summary, TTL_SECONDS);
+        end(store, jobId, STATE_COMPLETED);
+    }
+
+    public static void failed(String jobId, String error) {
+        KeyValueStore store = getStore();
+        store.put(key(jobId, ERROR), error, TTL_SECONDS);
+        end(store, jobId, STATE_FAILED);
+    }
+
+    public static void cancelled(String jobId) {
+        end(getStore(), jobId, STATE_CANCELLED);
+    }
+
+    /**
+     * Asks the import to stop, at the next entry it handles. What was imported before is kept.
+     *
+     * @return false if the job is unknown or already ended
+     */
+    public static boolean cancel(String jobId) {
+        KeyValueStore store = getStore();
+        String state = store.getString(key(jobId, STATE));
+        if (!STATE_SCHEDULED.equals(state) && !STATE_RUNNING.equals(state)) {
+            return false;
+        }
+        store.put(key(jobId, CANCEL_REQUESTED), "true", TTL_SECONDS);
+        return true;
+    }
+
+    /**
+     * Tells if the principal can cancel the job: the user who started it, or an administrator.
+     */
+    public static boolean canCancel(String jobId, NuxeoPrincipal principal) {
+        return principal.isAdministrator() || principal.getName().equals(getStore().getString(key(jobId, USERNAME)));
+    }
+
+    public static boolean isCancelRequested(String jobId) {
+        return getStore().getString(key(jobId, CANCEL_REQUESTED)) != null;
+    }
+
+    /**
+     * @return the status as a map (suitable for a JSON output), with the rates and the estimated remaining time
+     *         (etaSeconds, when the totals are known), null if the job is unknown
+     */
+    public static Map<String, Serializable> get(String jobId) {
+
+        KeyValueStore store = getStore();
+        String state = store.getString(key(jobId, STATE));
+        if (state == null) {
+            return null;
+        }
+
+        Map<String, Serializable> status = new LinkedHashMap<>();
+        status.put("jobId", jobId);
+        status.put(STATE, state);
+        status.put(FILENAME, store.getString(key(jobId, FILENAME)));
+        status.put(USERNAME, store.getString(key(jobId, USERNAME)));
+        status.put(ROOT_DOCUMENT_ID, store.getString(key(jobId, ROOT_DOCUMENT_ID)));
+        for (String field : new String[] { TOTAL_ENTRIES, TOTAL_BYTES, ENTRIES, BYTES, SUBMITTED, STARTED,
+                COMPLETED }) {
+            status.put(field, store.getLong(key(jobId, field)));
+        }
+        status.put(CANCEL_REQUESTED, isCancelRequested(jobId));
+        status.put(ERROR, store.getString(key(jobId, ERROR)));
+
+        long entries = getLong(status, ENTRIES);
+        long bytes = getLong(status, BYTES);
+        Long started = (Long) status.get(STARTED);
+        Long completed = (Long) status.get(COMPLETED);
+        double seconds = started == null ? 0
+                : ((completed == null ? System.currentTimeMillis() : completed) - started) / 1000.0;
+        double entriesPerSecond = seconds > 0 ? entries / seconds : 0;
+        double bytesPerSecond = seconds > 0 ? bytes / seconds : 0;
+        status.put("entriesPerSecond", Math.round(entriesPerSecond));
+        status.put("bytesPerSecond", Math.round(bytesPerSecond));
+
+        Long eta = null;
+        if (completed == null && status.get(TOTAL_ENTRIES) != null) {
+            long remainingEntries = Math.max(getLong(status, TOTAL_ENTRIES) - entries, 0);
+            long remainingBytes = Math.max(getLong(status, TOTAL_BYTES) - bytes, 0);
+            // Before the first progress report, from the previous imports
+            ImportThroughput throughput = entries == 0 ? ImportThroughput.load()
+                    : new ImportThroughput(entriesPerSecond, bytesPerSecond);
+            eta = throughput == null ? null : throughput.estimateSeconds(remainingEntries, remainingBytes);
+        }
+        status.put("etaSeconds", eta);
+        status.put(SUMMARY, store.getString(key(jobId, SUMMARY)));
+
+        return status;
+    }
+
+    protected static long getLong(Map<String, Serializable> status, String field) {
+        Long value = (Long) status.get(field);
+        return value == null ? 0 : value;
+    }
+
+    protected static void end(KeyValueStore store, String jobId, String state) {
+        store.put(key(jobId, COMPLETED), System.currentTimeMillis(), TTL_SECONDS);
+        store.put(key(jobId, STATE), state, TTL_SECONDS);
+    }
+
+    protected static String key(String jobId, String field) {
+        return KEY_PREFIX + jobId + ":" + field;
+    }
+
+    protected static KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(UnzipCheckpoint.KV_STORE_NAME);
+    }
+
+}
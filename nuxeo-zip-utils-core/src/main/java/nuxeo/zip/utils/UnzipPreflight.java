@@ -0,0 +1,240 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * What an import would do and cost, computed from its <code>ImportPlan</code> (so from the central directory only)
+ * before anything is created: number of folders and files, total uncompressed bytes, largest entries, maximum depth,
+ * names already used in the target and estimated duration (see <code>ImportThroughput</code>).
+ * <p>
+ * <code>checkLimits</code> and <code>checkQuota</code> fail right away when the import would be rejected anyway.
+ *
+ * @since 2025.2
+ */
+public class UnzipPreflight {
+
+    public static final int DEFAULT_LARGEST_COUNT = 10;
+
+    // From the quota addon, read without depending on it
+    protected static final String QUOTA_SCHEMA = "documents_size_statistics";
+
+    protected static final String XPATH_QUOTA_MAX_SIZE = "dss:maxSize";
+
+    protected static final String XPATH_QUOTA_TOTAL_SIZE = "dss:totalSize";
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+
+    protected final int folders;
+
+    protected final int files;
+
+    protected final long bytes;
+
+    // Entries whose size is not in the central directory
+    protected final int unknownSizes;
+
+    protected final int maxDepth;
+
+    protected final List<ZipEntry> largest;
+
+    protected final Set<String> collisions = new LinkedHashSet<>();
+
+    protected Long estimatedSeconds;
+
+    protected UnzipPreflight(ImportPlan plan, int largestCount) {
+
+        folders = plan.getFolders().size();
+        files = plan.getFiles().size();
+        bytes = plan.getFiles().stream().mapToLong(entry -> Math.max(entry.getSize(), 0)).sum();
+        unknownSizes = (int) plan.getFiles().stream().filter(entry -> entry.getSize() < 0).count();
+        int folderDepth = plan.getFolders().stream().mapToInt(path -> path.split("/").length).max().orElse(0);
+        // A file is one level below its folder
+        int fileDepth = plan.getFiles().stream().mapToInt(entry -> entry.getName().split("/").length).max().orElse(0);
+        maxDepth = Math.max(folderDepth, fileDepth);
+        largest = plan.getFiles()
+                      .stream()
+                      .sorted(Comparator.comparingLong(ZipEntry::getSize).reversed())
+                      .limit(largestCount)
+                      .collect(Collectors.toList());
+    }
+
+    /**
+     * Computes the preflight of the plan, with its estimated duration when a throughput was measured.
+     */
+    public static UnzipPreflight of(ImportPlan plan, int largestCount) {
+        UnzipPreflight preflight = new UnzipPreflight(plan, largestCount);
+        ImportThroughput throughput = ImportThroughput.load();
+        if (throughput != null) {
+            preflight.estimatedSeconds = throughput.estimateSeconds(preflight.folders + preflight.files,
+                    preflight.bytes);
+        }
+        return preflight;
+    }
+
+    /**
+     * Lists the names which are already used by children of the target: the root document to create or, with
+     * <code>mapRoot</code>, the top-level folders and files of the archive. The import does not fail on them, but
+     * the FileManager updates the existing files with the same name instead of creating new ones.
+     */
+    public void checkCollisions(CoreSession session, DocumentModel target, ImportPlan plan, String rootName,
+            boolean mapRoot) {
+
+        ImportFolderCache cache = new ImportFolderCache();
+        if (!mapRoot) {
+            if (rootName != null && cache.hasChildNamed(session, target.getRef(), rootName)) {
+                collisions.add(rootName);
+            }
+            return;
+        }
+        for (String folder : plan.getFolders()) {
+            if (!folder.contains("/") && cache.hasChildNamed(session, target.getRef(), folder)) {
+                collisions.add(folder);
+            }
+        }
+        for (ZipEntry file : plan.getFiles()) {
+            if (!file.getName().contains("/") && cache.hasChildNamed(session, target.getRef(), file.getName())) {
+                collisions.add(file.getName());
+            }
+        }
+    }
+
+    /**
+     * Fails when the import exceeds one of the limits, 0 disabling a limit.
+     *
+     * @throws NuxeoException listing the exceeded limits
+     */
+    public void checkLimits(long maxBytes, long maxFiles, long maxEntryBytes) {
+
+        List<String> errors = new ArrayList<>();
+        if (maxBytes > 0 && bytes > maxBytes) {
+            errors.add("the archive extracts " + bytes + " bytes, the limit is " + maxBytes);
+        }
+        if (maxFiles > 0 && files > maxFiles) {
+            errors.add("the archive has " + files + " files, the limit is " + maxFiles);
+        }
+        if (maxEntryBytes > 0 && !largest.isEmpty() && largest.get(0).getSize() > maxEntryBytes) {
+            errors.add("the entry " + largest.get(0).getName() + " has " + largest.get(0).getSize()
+                    + " bytes, the limit is " + maxEntryBytes);
+        }
+        if (!errors.isEmpty()) {
+            throw new NuxeoException("The import would be rejected: " + String.join(", ", errors));
+        }
+    }
+
+    /**
+     * Fails when the import would exceed the size quota of the target or of one of its ancestors, if the quota addon
+     * is installed and a quota is set.
+     *
+     * @throws NuxeoException if a quota would be exceeded
+     */
+    public void checkQuota(CoreSession session, DocumentModel target) {
+
+        // The target and its ancestors
+        for (DocumentModel doc : session.getParentDocuments(target.getRef())) {
+            if (!doc.hasSchema(QUOTA_SCHEMA)) {
+                continue;
+            }
+            long maxSize = toLong(doc.getPropertyValue(XPATH_QUOTA_MAX_SIZE));
+            long totalSize = toLong(doc.getPropertyValue(XPATH_QUOTA_TOTAL_SIZE));
+            if (maxSize > 0 && totalSize + bytes > maxSize) {
+                throw new NuxeoException("The import would exceed the quota of " + doc.getPathAsString() + ": "
+                        + totalSize + " bytes used, " + bytes + " to import, " + maxSize + " allowed");
+            }
+        }
+    }
+
+    protected static long toLong(Serializable value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    public String toJSON() {
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("folders", folders);
+        json.put("files", files);
+        json.put("bytes", bytes);
+        json.put("unknownSizes", unknownSizes);
+        json.put("maxDepth", maxDepth);
+        List<Map<String, Object>> largestJson = new ArrayList<>();
+        for (ZipEntry entry : largest) {
+            Map<String, Object> entryJson = new LinkedHashMap<>();
+            entryJson.put("name", entry.getName());
+            entryJson.put("size", entry.getSize());
+            largestJson.add(entryJson);
+        }
+        json.put("largest", largestJson);
+        json.put("collisions", collisions);
+        json.put("estimatedSeconds", estimatedSeconds);
+        try {
+            return MAPPER.writeValueAsString(json);
+        } catch (JsonProcessingException e) {
+            throw new NuxeoException("Cannot serialize the import preflight", e);
+        }
+    }
+
+    public int getFolders() {
+        return folders;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public List<ZipEntry> getLargest() {
+        return largest;
+    }
+
+    public Set<String> getCollisions() {
+        return collisions;
+    }
+
+    /**
+     * @return the estimated duration of the import, in seconds, null if no throughput was measured yet
+     */
+    public Long getEstimatedSeconds() {
+        return estimatedSeconds;
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * Status of an import running outside of the calling thread (possibly on other nodes of the cluster), shared through
+ * the <code>zipUtils</code> KeyValueStore.
+ * <p>
+ * The import is split in ranges of entries. Each range reports the entries it imported, and when it is done (imported,
+ * or failed after its retries), the import is completed when all its ranges are. The entries of the failed ranges
+ * which were not imported are not counted in the processed ones.
+ *
+ * @since 2025.2
+ */
+public class UnzipStatus {
+
+    public static final String STATE_RUNNING = "running";
+
+    public static final String STATE_COMPLETED = "completed";
+
+    protected static final String KEY_PREFIX = "unzip:status:";
+
+    protected static final long TTL_SECONDS = 7 * 24 * 3600;
+
+    protected static final String STATE = "state";
+
+    protected static final String ROOT_DOCUMENT_ID = "rootDocumentId";
+
+    protected static final String TOTAL_ENTRIES = "totalEntries";
+
+    protected static final String PROCESSED_ENTRIES = "processedEntries";
+
+    protected static final String TOTAL_RANGES = "totalRanges";
+
+    protected static final String COMPLETED_RANGES = "completedRanges";
+
+    protected static final String ERRORS = "errors";
+
+    protected static final String SUBMITTED = "submitted";
+
+    protected static final String COMPLETED = "completed";
+
+    private UnzipStatus() {
+        // Static helpers only
+    }
+
+    public static void init(String commandId, String rootDocumentId, long totalEntries, long totalRanges) {
+
+        KeyValueStore store = getStore();
+        store.put(key(commandId, ROOT_DOCUMENT_ID), rootDocumentId, TTL_SECONDS);
+        store.put(key(commandId, TOTAL_ENTRIES), totalEntries, TTL_SECONDS);
+        store.put(key(commandId, PROCESSED_ENTRIES), 0L, TTL_SECONDS);
+        store.put(key(commandId, TOTAL_RANGES), totalRanges, TTL_SECONDS);
+        store.put(key(commandId, COMPLETED_RANGES), 0L, TTL_SECONDS);
+        store.put(key(commandId, ERRORS), 0L, TTL_SECONDS);
+        store.put(key(commandId, SUBMITTED), System.currentTimeMillis(), TTL_SECONDS);
+        if (totalRanges == 0) {
+            complete(store, commandId);
+        } else {
+            store.put(key(commandId, STATE), STATE_RUNNING, TTL_SECONDS);
+        }
+    }
+
+    /**
+     * Called by the worker of a range after each attempt, with the entries it actually imported (committed).
+     */
+    public static void addEntries(String commandId, long entries) {
+        getStore().addAndGet(key(commandId, PROCESSED_ENTRIES), entries);
+    }
+
+    /**
+     * Called once per range: when it is imported, or when it failed and will not be retried anymore.
+     */
+    public static void rangeDone(String commandId, boolean error) {
+
+        KeyValueStore store = getStore();
+        if (error) {
+            store.addAndGet(key(commandId, ERRORS), 1);
+        }
+        long completedRanges = store.addAndGet(key(commandId, COMPLETED_RANGES), 1);
+        Long totalRanges = store.getLong(key(commandId, TOTAL_RANGES));
+        if (totalRanges != null && completedRanges >= totalRanges) {
+            complete(store, commandId);
+        }
+    }
+
+    /**
+     * @return the status as a map (suitable for a JSON output), null if the command is unknown
+     */
+    public static Map<String, Serializable> get(String commandId) {
+
+        KeyValueStore store = getStore();
+        String state = store.getString(key(commandId, STATE));
+        if (state == null) {
+            return null;
+        }
+
+        Map<String, Serializable> status = new LinkedHashMap<>();
+        status.put("commandId", commandId);
+        status.put(STATE, state);
+        status.put(ROOT_DOCUMENT_ID, store.getString(key(commandId, ROOT_DOCUMENT_ID)));
+        for (String field : new String[] { TOTAL_ENTRIES, PROCESSED_ENTRIES, TOTAL_RANGES, COMPLETED_RANGES, ERRORS,
+                SUBMITTED, COMPLETED }) {
+            status.put(field, store.getLong(key(commandId, field)));
+        }
+
+        return status;
+    }
+
+    public static boolean isCompleted(String commandId) {
+        return STATE_COMPLETED.equals(getStore().getString(key(commandId, STATE)));
+    }
+
+    protected static void complete(KeyValueStore store, String commandId) {
+        // No range will read the archive anymore
+        ArchiveStore.remove(commandId);
+        store.put(key(commandId, COMPLETED), System.currentTimeMillis(), TTL_SECONDS);
+        store.put(key(commandId, STATE), STATE_COMPLETED, TTL_SECONDS);
+    }
+
+    protected static String key(String commandId, String field) {
+        return KEY_PREFIX + commandId + ":" + field;
+    }
+
+    protected static KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(UnzipCheckpoint.KV_STORE_NAME);
+    }
+
+}
@@ -19,26 +19,61 @@
  */
 package nuxeo.zip.utils;
 
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.*;
-import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.api.pathsegment.PathSegmentService;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.core.api.trash.TrashService;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.runtime.stream.StreamService;
 import org.nuxeo.ecm.platform.filemanager.api.FileImporterContext;
 import org.nuxeo.ecm.platform.filemanager.api.FileManager;
+import org.nuxeo.ecm.platform.mimetype.MimetypeNotFoundException;
+import org.nuxeo.ecm.platform.mimetype.interfaces.MimetypeRegistry;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.api.login.NuxeoLoginContext;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Path;
-import java.util.Enumeration;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import nuxeo.zip.utils.CommitPolicy.Trigger;
+import nuxeo.zip.utils.stream.UnzipProcessor;
+import nuxeo.zip.utils.stream.UnzipRangeCommand;
+
 /**
  * @since 10.2
  */
@@ -50,13 +85,26 @@ public class UnzipToDocuments {
 
     public static int DEFAULT_COMMIT_MODULO = 100;
 
+    public static int DEFAULT_PARALLELISM = 1;
+
+    public static String DEFAULT_BATCH_FILE_TYPE = "File";
+
+    public static int DEFAULT_RANGE_SIZE = 1000;
+
+    // In parallel mode, we go down at most this number of levels to find enough subtrees to split the import
+    protected static final int MAX_SPLIT_DEPTH = 3;
+
+    protected static final int TRASH_BATCH_SIZE = 100;
+
+    protected static final long JOB_UPDATE_INTERVAL_MILLIS = 1000;
+
     private DocumentModel parentDoc;
 
     private Blob zipBlob;
 
     private String childFolderishType = DEFAULT_FOLDERISH_TYPE;
 
-    private int commitModulo = DEFAULT_COMMIT_MODULO;
+    private CommitPolicy commitPolicy = new CommitPolicy();
 
     private String rootFolderishName;
 
@@ -64,12 +112,67 @@ public class UnzipToDocuments {
 
     private Boolean mapRoot = false;
 
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private boolean batchMode = false;
+
+    private String batchFileType = DEFAULT_BATCH_FILE_TYPE;
+
+    private boolean resume = false;
+
+    private boolean deduplicate = false;
+
+    protected BlobDeduplicator deduplicator = new BlobDeduplicator();
+
+    private boolean streaming = false;
+
+    private boolean sync = false;
+
+    private boolean syncTrashRemoved = false;
+
+    // Import-scoped, in sync mode
+    protected ArchiveSync archiveSync;
+
+    private BulkImportMode bulkImportMode;
+
+    private TypeMapping typeMapping;
+
+    private NestedArchiveLimits nestedArchiveLimits;
+
+    // Null when all the files are imported
+    private EntryFilter entryFilter;
+
+    // Enabled by default (64 KB), null when disabled by setSmallEntryThreshold(0)
+    private EntryBufferPool entryBufferPool = new EntryBufferPool(EntryBufferPool.DEFAULT_THRESHOLD);
+
+    // Set when run by an UnzipWork
+    private String jobId;
+
+    protected volatile long lastJobUpdateMillis;
+
+    private int pipelineThreads = 0;
+
+    private int pipelineCapacity = 0;
+
+    // Import-scoped, when the files are extracted by a pipeline
+    protected ImportPipeline pipeline;
+
+    // Extension => mime type, "" when the registry has none
+    protected final Map<String, String> mimeTypesByExtension = new ConcurrentHashMap<>();
+
     private DocumentModel rootDocument;
 
+    // Import-scoped, see run()
+    protected ImportFolderCache folderCache;
+
+    protected String archiveDigest;
+
+    protected ImportSummary summary;
+
     public UnzipToDocuments(DocumentModel parentDoc, Blob zipBlob) {
         this.parentDoc = parentDoc;
         this.zipBlob = zipBlob;
-        rootFolderishName = FilenameUtils.getBaseName(zipBlob.getFilename());
+        rootFolderishName = StreamingArchive.getBaseName(zipBlob.getFilename());
     }
 
     /**
@@ -94,124 +197,1143 @@ public class UnzipToDocuments {
      */
     public DocumentModel run() throws NuxeoException {
 
-        File tempFolderFile = null;
         ZipFile zipFile = null;
 
         CoreSession session = parentDoc.getCoreSession();
-        FileManager fileManager = Framework.getService(FileManager.class);
+        folderCache = new ImportFolderCache();
+        summary = new ImportSummary();
+        archiveSync = null;
+        pipeline = null;
+        long start = System.currentTimeMillis();
 
         try {
 
-            Path pathToTempFolder = Framework.createTempDirectory(rootFolderishType + "-Unzip");
-            tempFolderFile = new File(pathToTempFolder.toString());
-            File zipBlobFile = zipBlob.getFile();
-            zipFile = new ZipFile(zipBlobFile);
-            Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            
-            logger.info("UnzipToDocuments, starting, for blob " + zipFile.getName());
+            if (!streaming && StreamingArchive.isZip(zipBlob)) {
+                zipFile = new ZipFile(zipBlob.getFile());
+                importZip(session, zipFile);
+            } else {
+                importStreamingArchive(session);
+            }
 
-            DocumentModel parentForImport;
+        } catch (IOException e) {
+            // Do not commit a partial batch: the state must remain the one of the last checkpoint
+            TransactionHelper.setTransactionRollbackOnly();
+            throw new NuxeoException("Error while unzipping and creating Documents", e);
+        } catch (RuntimeException e) {
+            TransactionHelper.setTransactionRollbackOnly();
+            throw e;
+        } finally {
+            try {
+                if (zipFile != null) {
+                    zipFile.close();
+                }
+            } catch (IOException e) {
+                // Ignore;
+            }
+            if (entryBufferPool != null) {
+                // The thread is usually pooled (WorkManager, request), do not keep the buffer after the import
+                entryBufferPool.release();
+            }
+
+            TransactionHelper.commitOrRollbackTransaction();
+            TransactionHelper.startTransaction();
+        }
+        ImportThroughput.record(summary.getEntries(), summary.getBytes(), System.currentTimeMillis() - start);
+        if (jobId != null) {
+            UnzipJob.progress(jobId, summary.getEntries(), summary.getBytes());
+        }
+
+        if (bulkImportMode != null) {
+            // Everything is committed, the documents of the import are processed at once
+            DocumentModel scope = mapRoot || rootDocument == null ? parentDoc : rootDocument;
+            summary.setPostProcessing(bulkImportMode.schedulePostProcessing(session, scope, start));
+        }
+
+        return rootDocument;
+    }
+
+    /**
+     * Computes what <code>run()</code> would do with the current settings, reading only the central directory of the
+     * archive (a zip file). Nothing is created.
+     *
+     * @param largestCount the number of largest entries to report
+     * @since 2025.2
+     */
+    public UnzipPreflight preflight(int largestCount) throws NuxeoException {
+
+        try (ZipFile zipFile = new ZipFile(zipBlob.getFile())) {
+            ImportPlan plan = newPlan(Collections.list(zipFile.entries()));
+            UnzipPreflight preflight = UnzipPreflight.of(plan, largestCount);
+            preflight.checkCollisions(parentDoc.getCoreSession(), parentDoc, plan, rootFolderishName, mapRoot);
+            return preflight;
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot read the central directory of " + zipBlob.getFilename(), e);
+        }
+    }
 
+    /**
+     * Imports a zip archive, reading its central directory: folders first, then the files, sequentially or in
+     * parallel.
+     *
+     * @since 2025.2
+     */
+    protected void importZip(CoreSession session, ZipFile zipFile) throws IOException {
+
+        logger.info("UnzipToDocuments, starting, for blob " + zipFile.getName());
+
+        List<? extends ZipEntry> entries = Collections.list(zipFile.entries());
+        ImportPlan plan = newPlan(entries);
+        if (jobId != null) {
+            UnzipJob.setTotals(jobId, plan.getFolders().size() + plan.getFiles().size(),
+                    plan.getFiles().stream().mapToLong(entry -> Math.max(entry.getSize(), 0)).sum());
+        }
+
+        // Checkpoints are only written by the sequential import, a parallel one does not commit in entry order
+        String checkpointKey = null;
+        UnzipCheckpoint checkpoint = null;
+        if (parallelism <= 1) {
+            archiveDigest = getArchiveDigest(entries);
+            checkpointKey = UnzipCheckpoint.getKey(parentDoc.getId(), archiveDigest);
+            if (resume) {
+                checkpoint = UnzipCheckpoint.load(checkpointKey);
+            }
+        } else if (resume) {
+            // Rejected before anything is created
+            throw new NuxeoException("UnzipToDocuments, resume is not supported with a parallelism greater than 1");
+        }
+
+        DocumentModel parentForImport;
+        int firstIndex = 0;
+
+        if (checkpoint != null) {
+            logger.info("UnzipToDocuments, resuming after entry #" + checkpoint.getEntryIndex());
+            firstIndex = checkpoint.getEntryIndex() + 1;
+            if (checkpoint.getRootDocumentId() != null) {
+                rootDocument = session.getDocument(new IdRef(checkpoint.getRootDocumentId()));
+            }
+            parentForImport = mapRoot ? parentDoc : rootDocument;
+        } else if (!mapRoot) {
+            rootDocument = sync ? getExistingRoot(session) : null;
+            if (rootDocument == null) {
+                rootDocument = createRootDocument(session);
+            }
+            parentForImport = rootDocument;
+        } else {
+            parentForImport = parentDoc;
+        }
+
+        if (sync) {
+            // Identified as the root, even when it is mapped to the target
+            archiveSync = new ArchiveSync(StringUtils.defaultString(rootFolderishName, zipBlob.getFilename()));
+            archiveSync.load(session, parentForImport);
+        }
+
+        // First the whole tree of folders, then the files, folder by folder
+        createFolders(session, plan, parentForImport, firstIndex - 1, checkpointKey);
+        if (parallelism > 1) {
+            importInParallel(session, zipFile, plan.getFiles(), parentForImport);
+        } else if (pipelineThreads > 0) {
+            try (ImportPipeline importPipeline = new ImportPipeline(new File(zipFile.getName()), pipelineThreads,
+                    pipelineCapacity)) {
+                pipeline = importPipeline;
+                importEntries(session, zipFile, plan.getFiles(), firstIndex, parentForImport, checkpointKey);
+            } finally {
+                if (pipeline != null) {
+                    summary.setPipeline(pipeline.getStats());
+                }
+            }
+            UnzipCheckpoint.remove(checkpointKey);
+        } else {
+            importEntries(session, zipFile, plan.getFiles(), firstIndex, parentForImport, checkpointKey);
+            UnzipCheckpoint.remove(checkpointKey);
+        }
+
+        // After a resume, the entries imported before are not checked: their documents would be seen as removed
+        // With a filter, the documents of the files not selected would be seen as removed
+        if (sync && syncTrashRemoved && firstIndex == 0 && entryFilter == null) {
+            trashRemoved(session, archiveSync.getRemoved());
+        }
+    }
+
+    /**
+     * Returns the root document created by a previous import of the archive in <code>parentDoc</code>, null if there
+     * is none.
+     *
+     * @since 2025.2
+     */
+    protected DocumentModel getExistingRoot(CoreSession session) {
+        PathRef ref = new PathRef(parentDoc.getPathAsString(), rootFolderishName);
+        return session.exists(ref) ? session.getDocument(ref) : null;
+    }
+
+    /**
+     * Moves to the trash the documents whose entry was removed from the archive, committing every
+     * <code>TRASH_BATCH_SIZE</code> documents.
+     *
+     * @since 2025.2
+     */
+    protected void trashRemoved(CoreSession session, List<DocumentRef> removed) {
+
+        TrashService trashService = Framework.getService(TrashService.class);
+        for (int from = 0; from < removed.size(); from += TRASH_BATCH_SIZE) {
+            List<DocumentRef> refs = removed.subList(from, Math.min(from + TRASH_BATCH_SIZE, removed.size()));
+            trashService.trashDocuments(Arrays.asList(session.getDocuments(refs.toArray(new DocumentRef[0]))));
+            TransactionHelper.commitOrRollbackTransaction();
+            TransactionHelper.startTransaction();
+        }
+        summary.addTrashed(removed.size());
+        logger.info("UnzipToDocuments, " + removed.size() + " document(s) removed from the archive were trashed");
+    }
+
+    /**
+     * Imports an archive which is not a zip, or a zip in streaming mode, see <code>StreamingArchive</code>. The entries
+     * are read in a single pass, in the order of the archive, so there is no <code>ImportPlan</code>: folders are
+     * created when they are met, and parallelism, resume and deduplication are not available. Each file is written to
+     * the blob provider as it is read, the blob is never copied to a local file.
+     * <p>
+     * The zip entries which cannot be streamed (stored with a data descriptor) are imported at the end, from the
+     * central directory: only then is the blob copied to a local file.
+     * <p>
+     * A single compressed file (<code>report.pdf.gz</code>) is imported as one document in the target, which is
+     * returned as the root document.
+     *
+     * @since 2025.2
+     */
+    protected void importStreamingArchive(CoreSession session) throws IOException {
+
+        try (StreamingArchive archive = StreamingArchive.open(zipBlob)) {
+
+            logger.info("UnzipToDocuments, starting, for blob " + zipBlob.getFilename() + " (single pass)");
+            if (parallelism > 1 || resume || deduplicate || sync) {
+                logger.warn("UnzipToDocuments, parallelism, resume, deduplicate and sync are ignored in a single pass");
+            }
+
+            CommitPolicy.Tracker tracker = commitPolicy.newTracker();
+
+            if (archive.isSingleFile()) {
+                archive.getNextEntry();
+                Blob blob = archive.getEntryBlob();
+                blob.setMimeType(getMimeType(blob.getFilename()));
+                blob = writeToBlobProvider(blob, session.getRepositoryName());
+                rootDocument = createFileDocument(session, null, parentDoc.getRef(), parentDoc.getPathAsString(),
+                        blob, null);
+                tracker.add(blob.getLength());
+                summary.addCommit(Trigger.END, tracker);
+                return;
+            }
+
+            DocumentModel parentForImport;
             if (!mapRoot) {
-                rootDocument = session.createDocument(
-                        session.createDocumentModel(parentDoc.getPathAsString(), rootFolderishName, rootFolderishType));
+                rootDocument = createRootDocument(session);
                 parentForImport = rootDocument;
             } else {
                 parentForImport = parentDoc;
             }
 
-            int count = 0;
+            DocumentBatch batch = batchMode ? new DocumentBatch() : null;
+            List<String> unreadable = new ArrayList<>();
+            importArchiveEntries(session, archive, parentForImport, "", 0, batch, tracker, -1, null, unreadable);
+
+            if (unreadable.isEmpty()) {
+                if (batch != null) {
+                    flushBatch(session, batch);
+                }
+                summary.addCommit(Trigger.END, tracker);
+                return;
+            }
+
+            endTransaction(session, batch, tracker, Trigger.CENTRAL_DIRECTORY, -1, null);
+            TransactionHelper.startTransaction();
+            logger.info("UnzipToDocuments, " + unreadable.size() + " entries read from the central directory");
+            try (ZipFile zipFile = new ZipFile(zipBlob.getFile())) {
+                List<ZipEntry> entries = new ArrayList<>();
+                for (String name : unreadable) {
+                    entries.add(zipFile.getEntry(name));
+                }
+                importEntries(session, zipFile, entries, 0, parentForImport, null);
+            }
+        }
+    }
+
+    /**
+     * Imports the entries of an archive read in a single pass, under <code>pathPrefix</code> (a directory of
+     * <code>parentForImport</code>, "" for the top level). Nested archives are expanded when the
+     * <code>NestedArchiveLimits</code> allow it.
+     *
+     * @param depth the nesting level of the archive, 0 for the imported one
+     * @param lastIndex the index of the last entry of the zip archive fully imported, for the checkpoint
+     * @param unreadable receives the names of the entries which cannot be read in a single pass, null to skip them
+     * @since 2025.2
+     */
+    protected void importArchiveEntries(CoreSession session, StreamingArchive archive, DocumentModel parentForImport,
+            String pathPrefix, int depth, DocumentBatch batch, CommitPolicy.Tracker tracker, int lastIndex,
+            String checkpointKey, List<String> unreadable) throws IOException {
+
+        String repositoryName = session.getRepositoryName();
+        for (ArchiveEntry entry = archive.getNextEntry(); entry != null; entry = archive.getNextEntry()) {
+
+            checkJob(session, batch, tracker, lastIndex, checkpointKey);
+
+            // tar archives often list ./folder/file
+            String entryPath = StringUtils.removeStart(StringUtils.removeStart(entry.getName(), "./"), "/");
+            if (entryPath.isEmpty() || shouldIgnoreEntry(entryPath)) {
+                continue;
+            }
+            entryPath = pathPrefix + entryPath;
+            // Same as the plan of a zip file: only the folders containing a selected file
+            if (entryFilter != null && (entry.isDirectory() || !entryFilter.accepts(entryPath, entry.getSize()))) {
+                continue;
+            }
 
-            while (entries.hasMoreElements()) {
+            logger.info("    Handling entry: " + entryPath);
 
-                DocumentModel parentForNewBlob;
-                ZipEntry entry = entries.nextElement();
-                String entryPath = entry.getName();
+            DocumentRef parentForNewBlob = handleFolders(session, batch, parentForImport, entryPath,
+                    entry.isDirectory());
 
-                if (shouldIgnoreEntry(entryPath)) {
+            if (!entry.isDirectory()) {
+                if (!archive.canReadEntryData()) {
+                    if (unreadable != null) {
+                        unreadable.add(entry.getName());
+                    } else {
+                        logger.warn("UnzipToDocuments, cannot read the entry " + entryPath + ", skipped");
+                    }
                     continue;
                 }
-                
-                logger.info("    Handling entry: " + entryPath);
 
-                Boolean isDirectory = entry.isDirectory();
+                if (isNestedArchive(entryPath, depth + 1)) {
+                    try (StreamingArchive nested = archive.openEntry(
+                            nestedArchiveLimits.newStreamFilter(entryPath, entry.getSize()))) {
+                        if (nested != null) {
+                            expandNestedArchive(session, nested, parentForImport, entryPath, depth + 1, batch,
+                                    tracker, lastIndex, checkpointKey);
+                            continue;
+                        }
+                    }
+                }
+
+                String parentPath = getParentPath(parentForImport, entryPath);
+                if (parentForNewBlob == null) {
+                    parentForNewBlob = parentForImport.getRef();
+                }
+
+                Blob blob = archive.getEntryBlob();
+                blob.setMimeType(getMimeType(blob.getFilename()));
+                if (commitPolicy.isLargeEntry(entry.getSize())) {
+                    // Do not extract it within a transaction, it could time out
+                    endTransaction(session, batch, tracker, Trigger.LARGE_ENTRY, lastIndex, checkpointKey);
+                    blob = writeToBlobProvider(blob, repositoryName);
+                    summary.addLargeEntry();
+                    TransactionHelper.startTransaction();
+                    tracker.reset();
+                    tracker.add(0);
+                } else {
+                    if (entryBufferPool != null && entryBufferPool.accepts(entry.getSize())) {
+                        blob = entryBufferPool.read(blob);
+                        summary.addSmallEntry();
+                    }
+                    // The entry cannot be read once the next one is, the document may be created later
+                    blob = writeToBlobProvider(blob, repositoryName);
+                    tracker.add(blob.getLength());
+                }
+
+                createFileDocument(session, batch, parentForNewBlob, parentPath, blob, null);
+            } else {
+                tracker.add(0);
+            }
+
+            Trigger trigger = tracker.check();
+            if (trigger != null) {
+                endTransaction(session, batch, tracker, trigger, lastIndex, checkpointKey);
+                TransactionHelper.startTransaction();
+                tracker.reset();
+            }
+        }
+    }
+
+    /**
+     * Tells if the file at <code>entryPath</code> should be expanded as an archive at this nesting level: a nested
+     * archive is imported in a folder named after it (<code>photos.zip</code> => <code>photos</code>), next to where
+     * it would have been imported.
+     *
+     * @since 2025.2
+     */
+    protected boolean isNestedArchive(String entryPath, int depth) {
+        return nestedArchiveLimits != null && nestedArchiveLimits.canExpand(depth)
+                && StreamingArchive.isArchiveName(entryPath);
+    }
+
+    /**
+     * Imports the entries of the nested archive found at <code>entryPath</code>, opened with the filter of the
+     * <code>NestedArchiveLimits</code> counting the bytes extracted.
+     *
+     * @since 2025.2
+     */
+    protected void expandNestedArchive(CoreSession session, StreamingArchive nested,
+            DocumentModel parentForImport, String entryPath, int depth, DocumentBatch batch,
+            CommitPolicy.Tracker tracker, int lastIndex, String checkpointKey) throws IOException {
+
+        String folderPath = StringUtils.removeEnd(entryPath, FilenameUtils.getName(entryPath))
+                + StreamingArchive.getBaseName(entryPath);
+        logger.info("UnzipToDocuments, expanding the nested archive " + entryPath + " in " + folderPath);
+
+        // Created even if the archive is empty
+        handleFolders(session, batch, parentForImport, folderPath, true);
+        importArchiveEntries(session, nested, parentForImport, folderPath + "/", depth, batch, tracker, lastIndex,
+                checkpointKey, null);
+        summary.addNestedArchive();
+    }
+
+    /**
+     * Distributed version of <code>run()</code>: the import is done by all the nodes of the cluster.
+     * <p>
+     * The calling thread only reads the central directory, creates the root document and the whole folder tree, then
+     * publishes ranges of <code>rangeSize</code> files (by position in the <code>ImportPlan</code>) in the
+     * <code>zipUtils/unzip</code> stream. Each range is
+     * imported by the <code>UnzipProcessor</code> computation, on any node, reading the archive from the blob
+     * provider (the blob is stored first if it is not already). Progress is available with
+     * <code>UnzipStatus.get(commandId)</code>.
+     *
+     * @return the id of the command, to get its status
+     * @since 2025.2
+     */
+    public String runDistributed(int rangeSize) throws NuxeoException {
+
+        CoreSession session = parentDoc.getCoreSession();
+        folderCache = new ImportFolderCache();
+        // The folders are created, and committed, by the calling thread
+        summary = new ImportSummary();
+        rangeSize = rangeSize <= 0 ? DEFAULT_RANGE_SIZE : rangeSize;
+        String commandId = UUID.randomUUID().toString();
+
+        try (ZipFile zipFile = new ZipFile(zipBlob.getFile())) {
+
+            logger.info("UnzipToDocuments, distributed import " + commandId + " for blob " + zipFile.getName());
+
+            ManagedBlob archive = storeArchive(commandId);
+            ImportPlan plan = newPlan(Collections.list(zipFile.entries()));
+            List<ZipEntry> files = plan.getFiles();
+
+            DocumentModel parentForImport;
+            if (!mapRoot) {
+                rootDocument = createRootDocument(session);
+                parentForImport = rootDocument;
+            } else {
+                parentForImport = parentDoc;
+            }
+
+            // Ranges are imported concurrently, so all the folders must exist before
+            createFolders(session, plan, parentForImport, -1, null);
+
+            int totalRanges = (files.size() + rangeSize - 1) / rangeSize;
+            UnzipStatus.init(commandId, rootDocument == null ? null : rootDocument.getId(), files.size(),
+                    totalRanges);
+
+            StreamService streamService = Framework.getService(StreamService.class);
+            for (int from = 0; from < files.size(); from += rangeSize) {
+                UnzipRangeCommand command = new UnzipRangeCommand();
+                command.commandId = commandId;
+                command.repository = session.getRepositoryName();
+                command.username = session.getPrincipal().getName();
+                command.parentId = parentForImport.getId();
+                if (archive != null) {
+                    command.blobProviderId = archive.getProviderId();
+                    command.blobKey = archive.getKey();
+                    command.blobFilename = archive.getFilename();
+                }
+                command.from = from;
+                command.to = Math.min(from + rangeSize, files.size());
+                command.commitModulo = commitPolicy.getMaxEntries();
+                command.commitMaxBytes = commitPolicy.getMaxBytes();
+                command.commitMaxSeconds = commitPolicy.getMaxSeconds();
+                command.commitTimeoutFraction = commitPolicy.getTimeoutFraction();
+                command.largeEntryThreshold = commitPolicy.getLargeEntryThreshold();
+                command.batchMode = batchMode;
+                command.batchFileType = batchFileType;
+                command.deduplicate = deduplicate;
+                command.typeMapping = typeMapping == null ? null : typeMapping.getRules();
+                if (entryFilter != null) {
+                    command.includes = entryFilter.getIncludes();
+                    command.excludes = entryFilter.getExcludes();
+                    command.minSize = entryFilter.getMinSize();
+                    command.maxSize = entryFilter.getMaxSize();
+                }
+                streamService.getStreamManager()
+                             .append(UnzipProcessor.STREAM_NAME, Record.of(commandId + ":" + from, command.toBytes()));
+            }
+
+        } catch (IOException e) {
+            TransactionHelper.setTransactionRollbackOnly();
+            ArchiveStore.remove(commandId);
+            throw new NuxeoException("Error while preparing the distributed unzip", e);
+        } catch (RuntimeException e) {
+            TransactionHelper.setTransactionRollbackOnly();
+            ArchiveStore.remove(commandId);
+            throw e;
+        } finally {
+            TransactionHelper.commitOrRollbackTransaction();
+            TransactionHelper.startTransaction();
+        }
+
+        return commandId;
+    }
 
-                // Create folderish documents as needed and get the parent for the Blob; i.e. where the Blob will be
-                // imported.
-                parentForNewBlob = handleFolders(session, parentForImport, entryPath, isDirectory);
+    /**
+     * Imports the files from <code>from</code> (included) to <code>to</code> (excluded), by position in the
+     * <code>ImportPlan</code>, in the document passed to the constructor, whose folders were already created. Called by
+     * the workers of a distributed import, within a transaction.
+     * <p>
+     * A checkpoint is saved under <code>checkpointKey</code> at each commit, so a retry of the range starts after the
+     * files already committed. The files imported are counted in the <code>ImportSummary</code>, even when it fails.
+     *
+     * @since 2025.2
+     */
+    public void importRange(int from, int to, String checkpointKey) throws NuxeoException {
 
+        folderCache = new ImportFolderCache();
+        summary = new ImportSummary();
+
+        int firstIndex = from;
+        UnzipCheckpoint checkpoint = UnzipCheckpoint.load(checkpointKey);
+        if (checkpoint != null) {
+            logger.info("UnzipToDocuments, retrying range " + from + "-" + to + " after entry #"
+                    + checkpoint.getEntryIndex());
+            firstIndex = Math.max(from, checkpoint.getEntryIndex() + 1);
+        }
+
+        try (ZipFile zipFile = new ZipFile(zipBlob.getFile())) {
+            List<ZipEntry> files = newPlan(Collections.list(zipFile.entries())).getFiles();
+            importEntries(parentDoc.getCoreSession(), zipFile, files.subList(0, Math.min(to, files.size())),
+                    firstIndex, parentDoc, checkpointKey);
+        } catch (IOException e) {
+            throw new NuxeoException("Error while unzipping and creating Documents", e);
+        }
+    }
+
+    /**
+     * Makes the archive readable by the other nodes. A blob of a blob provider is returned as is. Any other blob is
+     * copied to the <code>ArchiveStore</code> under <code>key</code>, to be removed when the import is over, and null
+     * is returned.
+     */
+    protected ManagedBlob storeArchive(String key) {
+
+        if (zipBlob instanceof ManagedBlob) {
+            return (ManagedBlob) zipBlob;
+        }
+
+        ArchiveStore.put(key, zipBlob);
+        return null;
+    }
+
+    /**
+     * Writes the blob to the default blob provider of the repository and returns the stored blob, with its MD5 digest
+     * computed while it is written. Saving a document with this blob then only references it, there is no second copy.
+     *
+     * @since 2025.2
+     */
+    protected ManagedBlob writeToBlobProvider(Blob blob, String repositoryName) throws IOException {
+
+        // The default blob provider of a repository has its name
+        BlobProvider provider = Framework.getService(BlobManager.class).getBlobProvider(repositoryName);
+        DigestingBlob digesting = new DigestingBlob(blob);
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = provider.writeBlob(digesting);
+        blobInfo.digest = digesting.getComputedDigest();
+        blobInfo.filename = blob.getFilename();
+        blobInfo.mimeType = blob.getMimeType();
+        blobInfo.length = blob.getLength();
+        return (ManagedBlob) provider.readBlob(blobInfo);
+    }
+
+    /**
+     * Creates the folderish documents of all the directories of the plan, in one pass: the top-level ones right away
+     * (one of them may be the root document), the others in a <code>DocumentBatch</code>. The transaction is committed
+     * at the end, so the files can be imported in other transactions, and during the pass if the
+     * <code>CommitPolicy</code> requires it (huge trees).
+     *
+     * @param lastIndex the index of the last file already imported, for the checkpoint (-1 when starting)
+     * @since 2025.2
+     */
+    protected void createFolders(CoreSession session, ImportPlan plan, DocumentModel parentForImport, int lastIndex,
+            String checkpointKey) {
+
+        DocumentBatch batch = new DocumentBatch();
+        CommitPolicy.Tracker tracker = commitPolicy.newTracker();
+
+        for (String folderPath : plan.getFolders()) {
+            handleFolders(session, batch, parentForImport, folderPath, true);
+            tracker.add(0);
+            Trigger trigger = tracker.check();
+            if (trigger != null) {
+                endTransaction(session, batch, tracker, trigger, lastIndex, checkpointKey);
+                TransactionHelper.startTransaction();
+                tracker.reset();
+            }
+        }
+
+        endTransaction(session, batch, tracker, Trigger.FOLDERS, lastIndex, checkpointKey);
+        TransactionHelper.startTransaction();
+    }
+
+    /**
+     * Imports the entries, in the order of the list, committing the transaction as required by the
+     * <code>CommitPolicy</code> (every <code>commitModulo</code> entries by default). Used as is for the sequential
+     * import, and by each worker (with its own session and transaction) in parallel mode.
+     * <p>
+     * Large files are extracted to the blob provider between two transactions, so the transaction only creates their
+     * document.
+     * <p>
+     * In batch mode, new documents are built with all their properties and created in bulk, by parent, before each
+     * commit. Files which may already exist are still handled by the FileManager, so they are overwritten.
+     * <p>
+     * When <code>checkpointKey</code> is not null, a checkpoint is saved after each commit, with the index of the last
+     * committed entry.
+     */
+    protected void importEntries(CoreSession session, ZipFile zipFile, List<? extends ZipEntry> entries,
+            int firstIndex, DocumentModel parentForImport, String checkpointKey) throws IOException {
+
+        DocumentBatch batch = batchMode ? new DocumentBatch() : null;
+        CommitPolicy.Tracker tracker = commitPolicy.newTracker();
+        // The next entry to submit to the pipeline, if any
+        int ahead = firstIndex;
+
+        for (int index = firstIndex; index < entries.size(); index++) {
+
+            checkJob(session, batch, tracker, index - 1, checkpointKey);
+
+            if (pipeline != null) {
+                ahead = submitAhead(entries, Math.max(ahead, index), session.getRepositoryName());
+            }
+
+            ZipEntry entry = entries.get(index);
+            DocumentRef parentForNewBlob;
+            String entryPath = entry.getName();
+
+            if (shouldIgnoreEntry(entryPath)) {
+                continue;
+            }
+
+            logger.info("    Handling entry: " + entryPath);
+
+            Boolean isDirectory = entry.isDirectory();
+
+            // Create folderish documents as needed and get the parent for the Blob; i.e. where the Blob will be
+            // imported.
+            parentForNewBlob = handleFolders(session, batch, parentForImport, entryPath, isDirectory);
+
+            // I only need to import the files, not the folders, folderish docs are created by handleFolders()
+            if (!isDirectory) {
+                String parentPath = getParentPath(parentForImport, entryPath);
                 if (parentForNewBlob == null) {
                     // This is a file at the root level, so the parent is the container.
-                    parentForNewBlob = parentForImport;
+                    parentForNewBlob = parentForImport.getRef();
+                }
+
+                if (archiveSync != null && archiveSync.check(entry) == ArchiveSync.Status.UNCHANGED) {
+                    summary.addUnchanged();
+                    continue;
                 }
 
-                // I only need to import the files, not the folders, folderish docs are created by handleFolders()
-                if (!isDirectory) {
-                    String systemPath = pathToTempFolder.toString() + File.separator + entryPath;
-                    File newFile = new File(systemPath);
-                    if (!newFile.getParentFile().exists()) {
-                        newFile.getParentFile().mkdirs();
+                long extractedBytes = entry.getSize();
+                // Already in the blob provider when extracted by the pipeline
+                Blob blob = pipeline == null ? null : pipeline.take(index);
+                boolean pipelined = blob != null;
+
+                if (!pipelined) {
+                    // The entry is streamed to the blob provider when the document is created, no local copy
+                    blob = createEntryBlob(zipFile, entry);
+
+                    if (isNestedArchive(entryPath, 1)) {
+                        try (InputStream in = new BufferedInputStream(blob.getStream());
+                                StreamingArchive nested = StreamingArchive.open(in, blob.getFilename(),
+                                        nestedArchiveLimits.newStreamFilter(entryPath, entry.getSize()))) {
+                            if (nested != null) {
+                                // The commits during the expansion still point before it: cannot resume inside
+                                expandNestedArchive(session, nested, parentForImport, entryPath, 1, batch, tracker,
+                                        index - 1, checkpointKey);
+                                if (checkpointKey != null) {
+                                    // Checkpointed once expanded, a resume does not expand it again
+                                    endTransaction(session, batch, tracker, Trigger.NESTED_ARCHIVE, index,
+                                            checkpointKey);
+                                    TransactionHelper.startTransaction();
+                                    tracker.reset();
+                                }
+                                continue;
+                            }
+                        }
                     }
-                    FileOutputStream fos = new FileOutputStream(newFile);
-                    InputStream zipEntryStream = zipFile.getInputStream(entry);
-                    int len;
-                    byte[] buffer = new byte[4096];
-                    while ((len = zipEntryStream.read(buffer)) > 0) {
-                        fos.write(buffer, 0, len);
+
+                    // Uploaded before the buffer is reused
+                    boolean small = entryBufferPool != null && entryBufferPool.accepts(entry.getSize());
+                    if (small) {
+                        blob = entryBufferPool.read(blob);
                     }
-                    fos.close();
-
-                    if (parentForNewBlob != null) {
-                        // Import
-                        FileBlob blob = new FileBlob(newFile);
-
-                        FileImporterContext context = FileImporterContext.builder(session, blob,
-                                parentForNewBlob.getPathAsString())
-                                                                         .overwrite(true)
-                                                                         .fileName(blob.getFilename())
-                                                                         .build();
-                        fileManager.createOrUpdateDocument(context);
+
+                    // Looked up before anything is uploaded, the entry is only read if there is a candidate
+                    Blob existing = deduplicate ? deduplicator.findExisting(session, entry, blob) : null;
+                    if (existing != null) {
+                        blob = existing;
+                        summary.addDeduplicated(entry.getSize());
+                        extractedBytes = 0;
+                    } else if (small) {
+                        blob = writeToBlobProvider(blob, session.getRepositoryName());
+                        summary.addSmallEntry();
+                    } else if (commitPolicy.isLargeEntry(entry.getSize())) {
+                        // Do not extract it within a transaction, it could time out
+                        endTransaction(session, batch, tracker, Trigger.LARGE_ENTRY, index - 1, checkpointKey);
+                        blob = writeToBlobProvider(blob, session.getRepositoryName());
+                        summary.addLargeEntry();
+                        extractedBytes = 0;
+                        TransactionHelper.startTransaction();
+                        tracker.reset();
                     }
                 }
 
-                count += 1;
-                if ((count % commitModulo) == 0) {
-                    TransactionHelper.commitOrRollbackTransaction();
-                    TransactionHelper.startTransaction();
+                createFileDocument(session, batch, parentForNewBlob, parentPath, blob, entry);
+                if (pipelined) {
+                    pipeline.created(entry.getSize());
                 }
+
+                tracker.add(extractedBytes);
+            } else {
+                tracker.add(0);
             }
 
-        } catch (IOException e) {
-            throw new NuxeoException("Error while unzipping and creating Documents", e);
-        } finally {
-            org.apache.commons.io.FileUtils.deleteQuietly(tempFolderFile);
-            try {
-                zipFile.close();
-            } catch (IOException e) {
-                // Ignore;
+            Trigger trigger = tracker.check();
+            if (trigger != null) {
+                endTransaction(session, batch, tracker, trigger, index, checkpointKey);
+                TransactionHelper.startTransaction();
+                tracker.reset();
             }
+        }
 
-            TransactionHelper.commitOrRollbackTransaction();
+        if (batch != null) {
+            flushBatch(session, batch);
+        }
+        // Committed by the caller
+        summary.addCommit(Trigger.END, tracker);
+    }
+
+    /**
+     * When the import is run by an <code>UnzipWork</code>, reports its progress, at most every second, and stops it if
+     * it was cancelled: what was imported before this entry is committed, with the checkpoint (so the import can be
+     * resumed), then an <code>UnzipCancelledException</code> is thrown.
+     *
+     * @param lastIndex the index of the last entry handled, for the checkpoint
+     * @since 2025.2
+     */
+    protected void checkJob(CoreSession session, DocumentBatch batch, CommitPolicy.Tracker tracker, int lastIndex,
+            String checkpointKey) {
+
+        long now = System.currentTimeMillis();
+        if (jobId == null || now - lastJobUpdateMillis < JOB_UPDATE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastJobUpdateMillis = now;
+
+        UnzipJob.progress(jobId, summary.getEntries() + tracker.getEntries(), summary.getBytes() + tracker.getBytes());
+        if (UnzipJob.isCancelRequested(jobId)) {
+            endTransaction(session, batch, tracker, Trigger.CANCELLED, lastIndex, checkpointKey);
             TransactionHelper.startTransaction();
+            throw new UnzipCancelledException(jobId);
         }
+    }
 
-        return rootDocument;
+    /**
+     * Submits the entries from <code>index</code> to the pipeline, until it is full, and returns the index of the next
+     * entry to submit. The entries which need the session (deduplicate, sync, nested archives) and the large entries
+     * are not submitted, they are extracted by the transactional thread as without pipeline.
+     *
+     * @since 2025.2
+     */
+    protected int submitAhead(List<? extends ZipEntry> entries, int index, String repositoryName) {
+        while (index < entries.size() && !pipeline.isFull()) {
+            ZipEntry entry = entries.get(index);
+            if (!entry.isDirectory() && !shouldIgnoreEntry(entry.getName()) && !deduplicate && archiveSync == null
+                    && !commitPolicy.isLargeEntry(entry.getSize()) && !isNestedArchive(entry.getName(), 1)) {
+                pipeline.submit(index, entry.getSize(), handle -> {
+                    Blob blob = createEntryBlob(handle, entry);
+                    if (entryBufferPool != null && entryBufferPool.accepts(entry.getSize())) {
+                        blob = entryBufferPool.read(blob);
+                        summary.addSmallEntry();
+                    }
+                    return writeToBlobProvider(blob, repositoryName);
+                });
+            }
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Creates the document of a file, in <code>parentForNewBlob</code> (whose path is <code>parentPath</code>).
+     * <p>
+     * Files matching the <code>TypeMapping</code>, and all new files in batch mode, are built directly (and only added
+     * to the batch in batch mode). The others, and the files which may already exist, go through the FileManager.
+     *
+     * @param entry the zip entry of the file, recorded on the document when deduplicating, null if none
+     * @return the document, not created yet in batch mode, null if the FileManager did not create one
+     * @since 2025.2
+     */
+    protected DocumentModel createFileDocument(CoreSession session, DocumentBatch batch, DocumentRef parentForNewBlob,
+            String parentPath, Blob blob, ZipEntry entry) {
+
+        PathSegmentService pathSegmentService = Framework.getService(PathSegmentService.class);
+        // Let the FileManager look for a document to overwrite only when there may be one
+        boolean overwrite = folderCache.hasChildNamed(session, parentForNewBlob, blob.getFilename());
+        TypeMapping.Target target = null;
+        if (!overwrite) {
+            target = typeMapping == null ? null : typeMapping.resolve(blob.getFilename(), blob.getMimeType());
+            if (target == null && batch != null) {
+                target = new TypeMapping.Target(batchFileType, TypeMapping.DEFAULT_XPATH);
+            }
+        }
+        if (target != null) {
+            DocumentModel doc = session.createDocumentModel(parentPath,
+                    pathSegmentService.generatePathSegment(blob.getFilename()), target.type);
+            doc.setPropertyValue("dc:title", blob.getFilename());
+            doc.setPropertyValue(target.xpath, (Serializable) blob);
+            if ((deduplicate || sync) && entry != null) {
+                setEntryInfo(doc, entry);
+            }
+            if (batch != null) {
+                // Cached once created, with the name given by the repository
+                addToBatch(session, batch, parentPath, doc, created -> folderCache.putChild(parentForNewBlob,
+                        created.getName(), blob.getFilename(), created.getRef()));
+            } else {
+                doc = createDocument(session, doc);
+                folderCache.putChild(parentForNewBlob, doc.getName(), blob.getFilename(), doc.getRef());
+            }
+            return doc;
+        }
+
+        FileManager fileManager = Framework.getService(FileManager.class);
+        FileImporterContext context = FileImporterContext.builder(session, blob, parentPath)
+                                                         .overwrite(overwrite)
+                                                         .fileName(blob.getFilename())
+                                                         .mimeTypeCheck(blob.getMimeType() == null)
+                                                         .persistDocument(bulkImportMode == null)
+                                                         .build();
+        DocumentModel doc = fileManager.createOrUpdateDocument(context);
+        if (doc != null && bulkImportMode != null) {
+            // Not persisted by the FileManager, so the flags are set before the listeners run
+            if ((deduplicate || sync) && entry != null) {
+                setEntryInfo(doc, entry);
+            }
+            doc = doc.getId() == null ? createDocument(session, doc) : saveDocument(session, doc);
+        } else if (doc != null && (deduplicate || sync) && entry != null) {
+            setEntryInfo(doc, entry);
+            doc = session.saveDocument(doc);
+        }
+        if (doc != null) {
+            folderCache.putChild(parentForNewBlob, doc.getName(), blob.getFilename(), doc.getRef());
+        }
+        return doc;
+    }
+
+    /**
+     * Records the entry a document is imported from, for the next imports with deduplication or sync. The document is
+     * not saved.
+     *
+     * @since 2025.2
+     */
+    protected void setEntryInfo(DocumentModel doc, ZipEntry entry) {
+        if (archiveSync != null) {
+            archiveSync.setEntryInfo(doc, entry);
+        } else {
+            BlobDeduplicator.setEntryInfo(doc, entry);
+        }
+    }
+
+    /**
+     * Creates the folderish document the archive is imported in, named and titled <code>rootFolderishName</code>, in
+     * <code>parentDoc</code>. Same for all the modes.
+     *
+     * @since 2025.2
+     */
+    protected DocumentModel createRootDocument(CoreSession session) {
+        DocumentModel root = session.createDocumentModel(parentDoc.getPathAsString(), rootFolderishName,
+                rootFolderishType);
+        root.setPropertyValue("dc:title", rootFolderishName);
+        return createDocument(session, root);
+    }
+
+    /**
+     * Creates a document of the import, with the flags of the bulk mode if any.
+     *
+     * @since 2025.2
+     */
+    protected DocumentModel createDocument(CoreSession session, DocumentModel doc) {
+        if (bulkImportMode == null) {
+            return session.createDocument(doc);
+        }
+        bulkImportMode.prepare(session, doc);
+        return session.createDocument(doc);
+    }
+
+    /**
+     * Saves a document updated by the import, with the flags of the bulk mode if any.
+     *
+     * @since 2025.2
+     */
+    protected DocumentModel saveDocument(CoreSession session, DocumentModel doc) {
+        if (bulkImportMode == null) {
+            return session.saveDocument(doc);
+        }
+        bulkImportMode.prepare(session, doc);
+        return session.saveDocument(doc);
+    }
+
+    /**
+     * @since 2025.2
+     */
+    protected void addToBatch(CoreSession session, DocumentBatch batch, String parentPath, DocumentModel doc) {
+        addToBatch(session, batch, parentPath, doc, null);
+    }
+
+    /**
+     * @param onCreated called with the created document when the batch is flushed, null if none
+     * @since 2025.2
+     */
+    protected void addToBatch(CoreSession session, DocumentBatch batch, String parentPath, DocumentModel doc,
+            Consumer<DocumentModel> onCreated) {
+        if (bulkImportMode != null) {
+            bulkImportMode.prepare(session, doc);
+        }
+        batch.add(parentPath, doc, onCreated);
+    }
+
+    /**
+     * @since 2025.2
+     */
+    protected void flushBatch(CoreSession session, DocumentBatch batch) {
+        batch.flush(session);
+    }
+
+    /**
+     * Returns the repository path of the folder containing the entry.
+     */
+    protected String getParentPath(DocumentModel parentForImport, String entryPath) {
+        int slash = entryPath.lastIndexOf('/');
+        return slash < 0 ? parentForImport.getPathAsString()
+                : parentForImport.getPathAsString() + "/" + entryPath.substring(0, slash);
+    }
+
+    /**
+     * Creates the pending documents, commits the transaction and saves the checkpoint, if any. Does not start a new
+     * transaction.
+     *
+     * @param lastIndex the index of the last entry handled in the transaction
+     * @since 2025.2
+     */
+    protected void endTransaction(CoreSession session, DocumentBatch batch, CommitPolicy.Tracker tracker,
+            Trigger trigger, int lastIndex, String checkpointKey) {
+
+        if (batch != null) {
+            flushBatch(session, batch);
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        if (checkpointKey != null) {
+            new UnzipCheckpoint(lastIndex, rootDocument == null ? null : rootDocument.getId(), archiveDigest).save(
+                    checkpointKey);
+        }
+
+        logger.info("UnzipToDocuments, commit (" + trigger + "): " + tracker.getEntries() + " entries, "
+                + tracker.getBytes() + " bytes, " + tracker.getElapsedMillis() + " ms");
+        summary.addCommit(trigger, tracker);
+    }
+
+    /**
+     * Returns the digest of the archive blob, or, when it has none (not stored yet), a digest of its central directory
+     * (names, CRCs and sizes of the entries), which is cheap and identifies the content as well for our purpose.
+     *
+     * @since 2025.2
+     */
+    protected String getArchiveDigest(List<? extends ZipEntry> entries) {
+
+        if (StringUtils.isNotBlank(zipBlob.getDigest())) {
+            return zipBlob.getDigest();
+        }
+
+        MessageDigest md = DigestUtils.getMd5Digest();
+        entries.forEach(entry -> {
+            md.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+            md.update((entry.getCrc() + ":" + entry.getSize() + "\n").getBytes(StandardCharsets.UTF_8));
+        });
+        return Hex.encodeHexString(md.digest());
+    }
+
+    /**
+     * Returns a blob reading the entry directly from the archive. The mime type is resolved from the file name, so the
+     * FileManager does not have to sniff the content (which would require a local copy of the entry). When the file
+     * name gives no mime type, it is left null and the FileManager will detect it from the content.
+     *
+     * @since 2025.2
+     */
+    protected Blob createEntryBlob(ZipFile zipFile, ZipEntry entry) {
+
+        Blob blob = new ZipEntryBlob(zipFile, entry);
+        blob.setMimeType(getMimeType(blob.getFilename()));
+
+        return blob;
+    }
+
+    /**
+     * Returns the mime type for the extension of the file name, null if there is none. The <code>MimetypeRegistry</code>
+     * is only called once per extension.
+     *
+     * @since 2025.2
+     */
+    protected String getMimeType(String filename) {
+
+        String extension = FilenameUtils.getExtension(filename).toLowerCase();
+        if (extension.isEmpty()) {
+            // Nothing to cache, the registry also knows some full names
+            return getMimeTypeFromRegistry(filename);
+        }
+
+        String mimeType = mimeTypesByExtension.computeIfAbsent(extension,
+                ext -> StringUtils.defaultString(getMimeTypeFromRegistry(filename)));
+        return mimeType.isEmpty() ? null : mimeType;
+    }
+
+    protected String getMimeTypeFromRegistry(String filename) {
+        try {
+            return Framework.getService(MimetypeRegistry.class).getMimetypeFromFilename(filename);
+        } catch (MimetypeNotFoundException e) {
+            // Let the FileManager detect it
+            return null;
+        }
+    }
+
+    /**
+     * Splits the files in independent subtrees and imports each of them in a worker thread, with its own session and
+     * transaction.
+     * <p>
+     * Files are split by top-level directory. When there are not enough top-level directories (typically, a zip of a
+     * single folder), we go down one level, up to <code>MAX_SPLIT_DEPTH</code>. The folders were all created before, by
+     * <code>createFolders</code>, so the workers only create files, never the same document, and the result is the
+     * same as the sequential import. The root document is resolved before the workers start, they only read it.
+     * <p>
+     * The workers are threads of the calling node, not <code>WorkManager</code> works: they are not persisted nor
+     * distributed (see <code>runDistributed</code> for that), and the import waits for them. Each one is logged in as
+     * the user of <code>session</code>, so the listeners and security checks see the same principal as in the calling
+     * thread.
+     */
+    protected void importInParallel(CoreSession session, ZipFile zipFile, List<ZipEntry> entriesToImport,
+            DocumentModel parentForImport) throws IOException {
+
+        int splitDepth = 1;
+        while (splitDepth < MAX_SPLIT_DEPTH && countPartitions(entriesToImport, splitDepth) < parallelism
+                && countPartitions(entriesToImport, splitDepth + 1) > countPartitions(entriesToImport, splitDepth)) {
+            splitDepth += 1;
+        }
+
+        Map<String, List<ZipEntry>> partitions = new LinkedHashMap<>();
+        for (ZipEntry entry : entriesToImport) {
+            partitions.computeIfAbsent(getPartitionKey(entry, splitDepth), k -> new ArrayList<>()).add(entry);
+        }
+
+        logger.info("UnzipToDocuments, importing " + partitions.size() + " subtrees with " + parallelism
+                + " threads");
+
+        if (rootDocument == null) {
+            // Mapped to the target with no top-level folder: the workers must not set it concurrently
+            rootDocument = parentForImport;
+        }
+
+        String repositoryName = session.getRepositoryName();
+        NuxeoPrincipal principal = session.getPrincipal();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, partitions.size()),
+                r -> new Thread(r, "UnzipToDocuments-" + threadCount.incrementAndGet()));
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (List<ZipEntry> partition : partitions.values()) {
+                futures.add(executor.submit(() -> {
+                    try (NuxeoLoginContext loginContext = SecurityConstants.SYSTEM_USERNAME.equals(principal.getName())
+                            ? Framework.loginSystem()
+                            : Framework.loginUser(principal.getName())) {
+                        TransactionHelper.startTransaction();
+                        try {
+                            CoreSession workerSession = CoreInstance.getCoreSession(repositoryName, principal);
+                            importEntries(workerSession, zipFile, partition, 0, parentForImport, null);
+                        } catch (IOException | RuntimeException e) {
+                            TransactionHelper.setTransactionRollbackOnly();
+                            throw e;
+                        } finally {
+                            TransactionHelper.commitOrRollbackTransaction();
+                            if (entryBufferPool != null) {
+                                entryBufferPool.release();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            NuxeoException error = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = new NuxeoException("Error while unzipping and creating Documents", e.getCause());
+                    } else {
+                        error.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while unzipping and creating Documents", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected int countPartitions(List<ZipEntry> entries, int splitDepth) {
+        Set<String> keys = new HashSet<>();
+        for (ZipEntry entry : entries) {
+            keys.add(getPartitionKey(entry, splitDepth));
+        }
+        return keys.size();
+    }
+
+    /**
+     * Returns the path of the folder, at most <code>splitDepth</code> levels deep, containing the entry. Empty for
+     * files at the root of the archive.
+     */
+    protected String getPartitionKey(ZipEntry entry, int splitDepth) {
+        String[] pathParts = entry.getName().split("/");
+        int folderDepth = entry.isDirectory() ? pathParts.length : pathParts.length - 1;
+        return String.join("/", Arrays.copyOf(pathParts, Math.min(folderDepth, splitDepth)));
     }
 
     /**
      * Given a path from the zip file, make sure there are folderish documents in Nuxeo for each folder.
+     * <p>
+     * Folders are resolved through the import-scoped <code>ImportFolderCache</code>, so the repository is queried
+     * about once per directory, not once per segment of every entry.
+     * <p>
+     * New folders are created with their title already set. When a <code>batch</code> is passed, they are added to it
+     * (except the top-level ones, created right away) and referenced by path until the batch is flushed.
      *
      * @param session
+     * @param batch the pending documents in batch mode, null otherwise
      * @param entryPath
      * @param isDirectory
-     * @return
+     * @return the folder where the entry goes, null for a file at the root of the archive
      */
-    private DocumentModel handleFolders(CoreSession session, DocumentModel parentForImport, String entryPath,
-            Boolean isDirectory) {
-        DocumentModel parentFolderForNewEntry = null;
+    private DocumentRef handleFolders(CoreSession session, DocumentBatch batch, DocumentModel parentForImport,
+            String entryPath, Boolean isDirectory) {
+        DocumentRef parentFolderForNewEntry = null;
 
-        String repoPathToCurrentDoc = parentForImport.getPathAsString();
+        DocumentRef currentDocParentRef = parentForImport.getRef();
         String repoPathToCurrentDocParent = parentForImport.getPathAsString();
+        String archivePathToCurrentDoc = "";
         String[] pathParts = entryPath.split("/");
 
         int limit;
@@ -226,34 +1348,56 @@ public class UnzipToDocuments {
 
             if (i == 0) {
                 docType = rootFolderishType;
+                archivePathToCurrentDoc = pathParts[i];
             } else {
                 docType = childFolderishType;
+                archivePathToCurrentDoc += "/" + pathParts[i];
             }
 
-            repoPathToCurrentDoc += "/" + pathParts[i];
-
-            // Test to see if the document already exists...
-            PathRef repoPathRefToCurrentDoc = new PathRef(repoPathToCurrentDoc);
-            if (!session.exists(repoPathRefToCurrentDoc)) {
-                parentFolderForNewEntry = session.createDocument(
-                        session.createDocumentModel(repoPathToCurrentDocParent, pathParts[i], docType));
-                parentFolderForNewEntry.setPropertyValue("dc:title", pathParts[i]);
-                session.saveDocument(parentFolderForNewEntry);
-            } else {
-                parentFolderForNewEntry = session.getDocument(repoPathRefToCurrentDoc);
+            parentFolderForNewEntry = folderCache.getFolder(archivePathToCurrentDoc);
+            if (parentFolderForNewEntry == null) {
+                // Test to see if the document already exists...
+                parentFolderForNewEntry = folderCache.getChild(session, currentDocParentRef, pathParts[i]);
+                if (parentFolderForNewEntry == null) {
+                    DocumentModel newFolder = session.createDocumentModel(repoPathToCurrentDocParent, pathParts[i],
+                            docType);
+                    newFolder.setPropertyValue("dc:title", pathParts[i]);
+                    if (batch == null || i == 0) {
+                        newFolder = createDocument(session, newFolder);
+                        parentFolderForNewEntry = newFolder.getRef();
+                    } else {
+                        addToBatch(session, batch, repoPathToCurrentDocParent, newFolder);
+                        parentFolderForNewEntry = new PathRef(newFolder.getPathAsString());
+                    }
+                    folderCache.putChild(currentDocParentRef, newFolder.getName(), pathParts[i],
+                            parentFolderForNewEntry);
+                    folderCache.putFolder(archivePathToCurrentDoc, parentFolderForNewEntry, true);
+                } else {
+                    folderCache.putFolder(archivePathToCurrentDoc, parentFolderForNewEntry, false);
+                }
             }
 
             // The top-level folderish is the document we should return.
             if (i == 0 && rootDocument == null) {
-                rootDocument = parentFolderForNewEntry;
+                rootDocument = session.getDocument(parentFolderForNewEntry);
             }
 
+            currentDocParentRef = parentFolderForNewEntry;
             repoPathToCurrentDocParent += "/" + pathParts[i];
         }
 
         return parentFolderForNewEntry;
     }
 
+    /**
+     * Returns the plan of the import of these entries, with the filter, if any.
+     *
+     * @since 2025.2
+     */
+    protected ImportPlan newPlan(List<? extends ZipEntry> entries) {
+        return ImportPlan.of(entries, this::shouldIgnoreEntry, entryFilter);
+    }
+
     /**
      * Check if the entry should be ignored. Either because not relevant (__MACOSX, ...) or dangerous ("../")
      */
@@ -271,7 +1415,54 @@ public class UnzipToDocuments {
     }
 
     public void setCommitModulo(int commitModulo) {
-        this.commitModulo = commitModulo <= 0 ? DEFAULT_COMMIT_MODULO : commitModulo;
+        commitPolicy.setMaxEntries(commitModulo);
+    }
+
+    /**
+     * Also commit the transaction when the files extracted since the last commit reach this size. 0 (the default)
+     * disables this policy.
+     *
+     * @since 2025.2
+     */
+    public void setCommitMaxBytes(long maxBytes) {
+        commitPolicy.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * Also commit the transaction when it has been running for this number of seconds. 0 (the default) disables this
+     * policy.
+     *
+     * @since 2025.2
+     */
+    public void setCommitMaxSeconds(long maxSeconds) {
+        commitPolicy.setMaxSeconds(maxSeconds);
+    }
+
+    /**
+     * Also commit the transaction when it has used this fraction of the time it had to live, 0.8 by default. 0 disables
+     * this policy.
+     *
+     * @since 2025.2
+     */
+    public void setCommitTimeoutFraction(double fraction) {
+        commitPolicy.setTimeoutFraction(fraction);
+    }
+
+    /**
+     * Files of at least this size are extracted outside of any transaction, 100 MB by default. 0 disables it.
+     *
+     * @since 2025.2
+     */
+    public void setLargeEntryThreshold(long threshold) {
+        commitPolicy.setLargeEntryThreshold(threshold);
+    }
+
+    /**
+     * @return what the last import did, commit by commit
+     * @since 2025.2
+     */
+    public ImportSummary getImportSummary() {
+        return summary;
     }
 
     public void setRootFolderishName(String name) {
@@ -282,7 +1473,184 @@ public class UnzipToDocuments {
         rootFolderishType = StringUtils.isBlank(type) ? DEFAULT_FOLDERISH_TYPE : type;
     }
 
+    /**
+     * @return the root document of the import, once it is created
+     * @since 2025.2
+     */
+    public DocumentModel getRootDocument() {
+        return rootDocument;
+    }
+
     public void setMapRoot(Boolean mapRoot) {
         this.mapRoot = mapRoot;
     }
+
+    /**
+     * When true, and a previous import of the same archive in the same target failed, the import restarts after the
+     * last committed entry, in the same root document, instead of starting from scratch. Only for the sequential import.
+     *
+     * @since 2025.2
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * When true, an entry whose content was already imported with deduplication (same CRC and size, then same digest)
+     * references the existing binary instead of being uploaded again, see <code>BlobDeduplicator</code>. The imported
+     * documents get the <code>ZipEntry</code> facet, with the CRC and size of their entry, used as a pre-filter by the
+     * next imports: the digest of an entry is only computed when a document matches it.
+     *
+     * @since 2025.2
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Reads a zip archive in a single pass, through the stream of the blob, instead of reading its central directory
+     * from a local copy (which, for a remote blob provider, means downloading the whole archive first): the documents
+     * are created as the bytes arrive, in the order of the archive. The blob is copied to a local file only if some
+     * entries cannot be streamed, to import them at the end. Without an <code>ImportPlan</code>, parallelism, resume,
+     * deduplicate and sync are not available.
+     *
+     * @since 2025.2
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Sets the sync mode, to import a new version of an archive imported before (in sync mode, so its documents have
+     * the CRC and size of their entry): the root document of the previous import is reused, the entries whose CRC and
+     * size did not change are skipped, and the other ones are imported (changed files are updated by the
+     * FileManager). Not used by <code>runDistributed</code> and for the archives which are not zip files.
+     *
+     * @since 2025.2
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * In sync mode, also moves to the trash the documents whose entry is no longer in the archive. Only the file
+     * documents are, not the folders.
+     *
+     * @since 2025.2
+     */
+    public void setSyncTrashRemoved(boolean syncTrashRemoved) {
+        this.syncTrashRemoved = syncTrashRemoved;
+    }
+
+    /**
+     * Sets the bulk mode: the documents of the import carry the flags of the mode, disabling listeners for them only,
+     * and its post-processing actions are run on these documents at the end. Null (the default) for a regular import.
+     * Not used by <code>runDistributed</code>.
+     *
+     * @since 2025.2
+     */
+    public void setBulkImportMode(BulkImportMode bulkImportMode) {
+        this.bulkImportMode = bulkImportMode;
+    }
+
+    /**
+     * Files matching the mapping are created directly with the mapped type, the blob in the mapped xpath, without
+     * going through the FileManager. Files which may already exist, or which match no rule, still go through the
+     * FileManager. Null (the default) for no mapping.
+     *
+     * @since 2025.2
+     */
+    public void setTypeMapping(TypeMapping typeMapping) {
+        this.typeMapping = typeMapping == null || typeMapping.isEmpty() ? null : typeMapping;
+    }
+
+    /**
+     * Expands the archives found in the archive (zip, tar and compressed tar files, by name), within these limits,
+     * each in a folder named after it. Null (the default) imports them as files. Not used by
+     * <code>runDistributed</code>.
+     *
+     * @since 2025.2
+     */
+    public void setNestedArchiveLimits(NestedArchiveLimits nestedArchiveLimits) {
+        this.nestedArchiveLimits = nestedArchiveLimits;
+    }
+
+    /**
+     * Imports only the files selected by the filter, evaluated on the central directory (or on the header of each
+     * entry for the other formats) before anything is extracted. The folders which contain no selected file are not
+     * created. Null (the default) imports all the files. In sync mode, documents are not trashed when there is a filter.
+     *
+     * @since 2025.2
+     */
+    public void setEntryFilter(EntryFilter entryFilter) {
+        this.entryFilter = entryFilter == null || entryFilter.isEmpty() ? null : entryFilter;
+    }
+
+    /**
+     * When true, new documents are built with all their properties set and created in bulk, grouped by parent, before
+     * each commit. In this mode, the FileManager is not called for new files: they are created as
+     * <code>batchFileType</code> documents (File by default), with the blob in file:content.
+     *
+     * @since 2025.2
+     */
+    public void setBatchMode(boolean batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    public void setBatchFileType(String type) {
+        batchFileType = StringUtils.isBlank(type) ? DEFAULT_BATCH_FILE_TYPE : type;
+    }
+
+    /**
+     * Files of at most <code>threshold</code> bytes are read in a buffer reused by all the entries, and written to the
+     * blob provider from memory, instead of being streamed. 64 KB by default, 0 to stream all the files.
+     *
+     * @since 2025.2
+     */
+    public void setSmallEntryThreshold(int threshold) {
+        entryBufferPool = threshold > 0 ? new EntryBufferPool(threshold) : null;
+    }
+
+    /**
+     * Sets the id of the <code>UnzipJob</code> running the import, to report its progress and to stop when it is
+     * cancelled. Null (the default) when the import is not run by an <code>UnzipWork</code>.
+     *
+     * @since 2025.2
+     */
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    /**
+     * Extracts the files (inflate and upload to the blob provider) on <code>threads</code> threads, each reading the
+     * archive with its own handle, while the transactional thread creates the documents. At most
+     * <code>capacity</code> entries are extracted ahead of the document creation (4 per thread if lower than 1). 0 (the
+     * default) extracts each file when creating its document. Only used by the sequential import of a zip file (a
+     * parallelism of 1).
+     *
+     * @since 2025.2
+     */
+    public void setPipeline(int threads, int capacity) {
+        pipelineThreads = Math.max(threads, 0);
+        pipelineCapacity = capacity;
+    }
+
+    /**
+     * @return the queue depth and throughput of the stages of the pipeline, while the import runs or after it, null
+     *         if the import does not use one
+     * @since 2025.2
+     */
+    public Map<String, Object> getPipelineStats() {
+        return pipeline == null ? null : pipeline.getStats();
+    }
+
+    /**
+     * Number of threads used to import the archive. With a value greater than 1, independent subtrees of the archive
+     * are imported in parallel, each with its own session and transaction, and <code>resume</code> is rejected.
+     *
+     * @since 2025.2
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism <= 0 ? DEFAULT_PARALLELISM : parallelism;
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.zip.utils.operations.UnzipToDocumentsOp;
+
+/**
+ * Runs <code>ZipUtils.UnzipToDocuments</code> in the <code>zipUtilsUnzip</code> work queue, so a long import does not
+ * hold the request which started it. The id of the work is the id of the job, see <code>UnzipJob</code> for its
+ * progress and cancellation.
+ * <p>
+ * Unless it is already a blob of a provider, the archive is copied to the <code>ArchiveStore</code> when the work is
+ * scheduled, so any node can run it, and removed from it when the job is over: completed, cancelled, or failed after
+ * the last retry of the <code>WorkManager</code> (a retry reads it again).
+ *
+ * @since 2025.2
+ */
+public class UnzipWork extends AbstractWork {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Log log = LogFactory.getLog(UnzipWork.class);
+
+    public static final String CATEGORY = "zipUtilsUnzip";
+
+    /**
+     * Set to the job id, in the context of the operation scheduling the work and of the one run by the work.
+     */
+    public static final String CONTEXT_VAR_JOB_ID = "zipInfo_unzipJobId";
+
+    protected final String blobProviderId;
+
+    protected final String blobKey;
+
+    protected final String blobFilename;
+
+    protected final HashMap<String, Serializable> params;
+
+    /**
+     * @param archive the archive when it is a blob of a provider, null when it is in the <code>ArchiveStore</code>
+     */
+    protected UnzipWork(String jobId, ManagedBlob archive, String filename, Map<String, Serializable> params) {
+        super(jobId);
+        blobProviderId = archive == null ? null : archive.getProviderId();
+        blobKey = archive == null ? null : archive.getKey();
+        blobFilename = filename;
+        this.params = new HashMap<>(params);
+    }
+
+    /**
+     * Schedules the import of <code>zipBlob</code> in <code>target</code>, after the commit of the transaction.
+     *
+     * @param params the parameters of the <code>ZipUtils.UnzipToDocuments</code> operation, but the target
+     * @return the id of the job
+     */
+    public static String schedule(DocumentModel target, Blob zipBlob, Map<String, Serializable> params) {
+
+        CoreSession session = target.getCoreSession();
+        String jobId = UUID.randomUUID().toString();
+        ManagedBlob archive = new UnzipToDocuments(target, zipBlob).storeArchive(jobId);
+
+        UnzipWork work = new UnzipWork(jobId, archive, zipBlob.getFilename(), params);
+        work.setDocument(session.getRepositoryName(), target.getId());
+        work.setOriginatingUsername(session.getPrincipal().getName());
+        UnzipJob.init(jobId, zipBlob.getFilename(), session.getPrincipal().getName());
+        Framework.getService(WorkManager.class).schedule(work, true);
+
+        return jobId;
+    }
+
+    @Override
+    public String getCategory() {
+        return CATEGORY;
+    }
+
+    @Override
+    public String getTitle() {
+        return "Unzip " + blobFilename;
+    }
+
+    @Override
+    public void work() {
+
+        if (UnzipJob.isCancelRequested(id)) {
+            // Not started
+            UnzipJob.cancelled(id);
+            ArchiveStore.remove(id);
+            return;
+        }
+        UnzipJob.started(id);
+        openUserSession();
+
+        try (OperationContext ctx = new OperationContext(session)) {
+            ctx.setInput(readArchive());
+            ctx.put(CONTEXT_VAR_JOB_ID, id);
+            Map<String, Object> opParams = new HashMap<>(params);
+            opParams.put("target", session.getDocument(new IdRef(docId)));
+
+            DocumentModel root = (DocumentModel) Framework.getService(AutomationService.class)
+                                                          .run(ctx, UnzipToDocumentsOp.ID, opParams);
+            UnzipJob.completed(id, root == null ? null : root.getId(),
+                    (String) ctx.get(UnzipToDocumentsOp.CONTEXT_VAR_IMPORT_SUMMARY));
+        } catch (IOException | OperationException | RuntimeException e) {
+            // Wrapped by the operation
+            if (ExceptionUtils.indexOfType(e, UnzipCancelledException.class) >= 0) {
+                log.info("Unzip job " + id + " cancelled");
+                UnzipJob.cancelled(id);
+                ArchiveStore.remove(id);
+                return;
+            }
+            // Retried by the WorkManager if it can, the job fails with the last retry, see workFailed
+            throw new NuxeoException("Unzip job " + id + " failed", e);
+        }
+        ArchiveStore.remove(id);
+    }
+
+    @Override
+    public void workFailed(Throwable exception) {
+        super.workFailed(exception);
+        Throwable cause = exception.getCause() == null ? exception : exception.getCause();
+        UnzipJob.failed(id, cause.getMessage());
+        ArchiveStore.remove(id);
+    }
+
+    protected Blob readArchive() throws IOException {
+
+        if (blobKey == null) {
+            return ArchiveStore.get(id);
+        }
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = blobKey;
+        blobInfo.filename = blobFilename;
+        return Framework.getService(BlobManager.class).getBlobProvider(blobProviderId).readBlob(blobInfo);
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FilenameUtils;
+import org.nuxeo.ecm.core.api.impl.blob.AbstractBlob;
+
+/**
+ * A Blob whose content is read directly from an entry of an open <code>ZipFile</code>.
+ * <p>
+ * Nothing is extracted to disk: when the document is saved, the blob provider reads the entry stream (inflating it on
+ * the fly) and computes the digest while writing. A temporary file is created only if a caller explicitly asks for one
+ * (<code>getCloseableFile()</code>), which is what the blob store does when it needs a local file.
+ * <p>
+ * The blob is only valid as long as the <code>ZipFile</code> is open, so the document must be created (and its blob
+ * written) before the import closes the archive.
+ *
+ * @since 2025.2
+ */
+public class ZipEntryBlob extends AbstractBlob {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final transient ZipFile zipFile;
+
+    protected final transient ZipEntry entry;
+
+    public ZipEntryBlob(ZipFile zipFile, ZipEntry entry) {
+        this.zipFile = zipFile;
+        this.entry = entry;
+        setFilename(FilenameUtils.getName(entry.getName()));
+    }
+
+    @Override
+    public InputStream getStream() throws IOException {
+        return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public long getLength() {
+        return entry.getSize();
+    }
+
+    public ZipEntry getEntry() {
+        return entry;
+    }
+
+}
@@ -21,13 +21,23 @@ package nuxeo.zip.utils;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.nuxeo.common.utils.ZipUtils;
 import org.nuxeo.ecm.automation.AutomationService;
@@ -41,7 +51,11 @@ import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.DocumentBlobManager;
 import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.schema.FacetNames;
+import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.runtime.api.Framework;
 
 /**
@@ -59,8 +73,9 @@ import org.nuxeo.runtime.api.Framework;
  * <p>
  * It is possible to ask to zip only the first level of the folder.
  * <p>
- * <b>WARNING</b>: In this first implementation (10.2), it is likely the code will not support big folders, with a lot
- * of family.
+ * The tree is walked without recursion, and only the folders waiting to be zipped and the names used in the current
+ * one are kept in memory, so there is no limit to the depth or the size of the tree (since 2025.2, the first
+ * implementation kept every path of the zip).
  * <p>
  * <b>WARNING</b>: It is stating the obvious to say that the zipping can take a lot of time if the bobs are big, and/or
  * the number of items to zip is big. When the operaiton will take time, and to avoid client timeouts, it is recommended
@@ -75,6 +90,14 @@ public class ZipFolderish {
     // Added with an AND after SELECT * FROM Document WHERE ecm:parentId = 'id of parent'
     public static final String DEFAULT_NXQL_WHERE_FOR_GET_CHILDREN = "ecm:mixinType != 'HiddenInNavigation' AND ecm:isVersion = 0 AND ecm:isProxy = 0 AND ecm:isTrashed = 0";
 
+    // Columns read instead of loading the document when there is no callback chain
+    protected static final String BLOB_COLUMNS = "file:content/data, file:content/name, file:content/mime-type,"
+            + " file:content/encoding, file:content/digest, file:content/length";
+
+    // The whole subtree in one query. Ordered by path, so a folder is always read before its children
+    protected static final String NXQL_SUBTREE = "SELECT ecm:uuid, ecm:parentId, ecm:primaryType, dc:title%s"
+            + " FROM Document WHERE ecm:ancestorId = '%s' AND %s ORDER BY ecm:path";
+
     protected DocumentModel mainDocument;
 
     protected CoreSession coreSession;
@@ -84,12 +107,14 @@ public class ZipFolderish {
     // Added with an AND after SELECT * FROM Document WHERE ecm:parentId = 'id of parent'
     protected String getChildrenWhereClause = DEFAULT_NXQL_WHERE_FOR_GET_CHILDREN;
 
-    // This is what makes this class not able to process big folders. This map store the title of documents and their
-    // paths in the zip. When adding a new element, we test if the path already existt and if yes, we must change the
-    // title used in the zip.
-    // Checlkin i the entry exist in the zip would have the same impact in memory, unless building somethign slow that
-    // uses the zip stream to loop and check all entries.
-    protected List<String> pathsInZip = new ArrayList<String>();
+    protected boolean singleQuery = false;
+
+    protected int prefetchBlobs = 0;
+
+    protected long prefetchMaxBytes = BlobPrefetcher.DEFAULT_MAX_BYTES;
+
+    // Set while writing, when the blobs are read ahead
+    protected BlobPrefetcher prefetcher;
 
     public ZipFolderish(DocumentModel docToZip) {
 
@@ -149,7 +174,45 @@ public class ZipFolderish {
 
         File finalZipFile = finalZip.getFile();
 
-        try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(finalZipFile))) {
+        try (OutputStream out = new FileOutputStream(finalZipFile)) {
+            write(out, doNotCreateMainFolder);
+        }
+
+        return finalZip;
+
+    }
+
+    /**
+     * Same as <code>run</code>, but nothing is written when the blob is returned: the archive is written when the blob
+     * is read (typically, straight to the HTTP response), without any temporary file. See
+     * <code>ZipFolderishBlob</code>.
+     *
+     * @param doNotCreateMainFolder
+     * @return the zipped content, whose length is unknown
+     * @since 2025.2
+     */
+    public Blob runStreaming(boolean doNotCreateMainFolder) {
+
+        if (!mainDocument.isFolder()) {
+            return null;
+        }
+
+        return new ZipFolderishBlob(this, doNotCreateMainFolder);
+    }
+
+    /**
+     * Writes the archive to <code>out</code>, which is not closed.
+     *
+     * @since 2025.2
+     */
+    public void write(OutputStream out, boolean doNotCreateMainFolder) throws IOException {
+
+        try (ZipOutputStream zipOut = new ZipOutputStream(CloseShieldOutputStream.wrap(out));
+                BlobPrefetcher blobPrefetcher = prefetchBlobs > 0
+                        ? new BlobPrefetcher(zipOut, prefetchBlobs, prefetchMaxBytes)
+                        : null) {
+
+            prefetcher = blobPrefetcher;
 
             String currentPath;
 
@@ -162,26 +225,77 @@ public class ZipFolderish {
                 ZipUtils._putDirectoryEntry(currentPath, zipOut);
             }
 
-            processFolderish(mainDocument, zipOut, currentPath);
+            if (singleQuery) {
+                processSubtree(zipOut, currentPath);
+            } else {
+                processFolderish(mainDocument, zipOut, currentPath);
+            }
 
-        }
+            if (prefetcher != null) {
+                prefetcher.flush();
+            }
 
-        return finalZip;
+        } finally {
+            prefetcher = null;
+        }
+    }
 
+    public DocumentModel getMainDocument() {
+        return mainDocument;
     }
 
+    /**
+     * Zips the content of <code>folderishDoc</code> and its subfolders. The tree is walked with a stack instead of
+     * recursive calls, so there is no limit to its depth. Each folder is processed in one go (its subfolders are pushed
+     * on the stack, its files are zipped), and the names used in the folder, to rename the duplicates, are forgotten
+     * when it is done: the memory depends on the number of children of a folder, not on the size of the tree.
+     */
     protected void processFolderish(DocumentModel folderishDoc, ZipOutputStream zipOut, String currentPath)
             throws IOException {
 
+        Deque<FolderToZip> stack = new ArrayDeque<>();
+        stack.push(new FolderToZip(folderishDoc.getId(), currentPath));
+        while (!stack.isEmpty()) {
+            processFolder(stack.pop(), zipOut, stack);
+        }
+    }
+
+    /**
+     * A folder waiting on the stack of <code>processFolderish</code>.
+     *
+     * @since 2025.2
+     */
+    protected static class FolderToZip {
+
+        protected final String id;
+
+        protected final String pathInZip;
+
+        protected FolderToZip(String id, String pathInZip) {
+            this.id = id;
+            this.pathInZip = pathInZip;
+        }
+    }
+
+    /**
+     * Zips the children of <code>folder</code> and pushes its subfolders to <code>stack</code>.
+     *
+     * @since 2025.2
+     */
+    protected void processFolder(FolderToZip folder, ZipOutputStream zipOut, Deque<FolderToZip> stack)
+            throws IOException {
+
         String nxql;
         String docTitle;
         String uuid;
         Blob blob;
         String pathInZip;
         int countForAvoidDuplicates = 1;
-        DocumentModel folderish;
-        DocumentModel doc;
+        // Names used in this folder only, the folder ones end with "/"
+        Set<String> names = new HashSet<>();
+        List<FolderToZip> subFolders = new ArrayList<>();
 
+        String currentPath = folder.pathInZip;
         if (!currentPath.endsWith("/")) {
             currentPath += "/";
         }
@@ -189,73 +303,179 @@ public class ZipFolderish {
         // ==============================================
         // Process folderish children
         // ==============================================
-        nxql = "SELECT ecm:uuid, dc:title FROM Document WHERE ecm:parentId = '" + folderishDoc.getId() + "'";
+        nxql = "SELECT ecm:uuid, dc:title FROM Document WHERE ecm:parentId = '" + folder.id + "'";
         nxql += " AND ecm:mixinType = 'Folderish'";
         nxql += " AND " + getChildrenWhereClause;
 
         try (IterableQueryResult result = coreSession.queryAndFetch(nxql, NXQL.NXQL)) {
             for (Map<String, Serializable> map : result) {
                 docTitle = (String) map.get("dc:title");
-                pathInZip = currentPath + docTitle + "/";
-                if (pathsInZip.contains(pathInZip)) {
+                if (names.contains(docTitle + "/")) {
                     countForAvoidDuplicates += 1;
                     docTitle += "-" + countForAvoidDuplicates;
-                    pathInZip = currentPath + docTitle + "/";
                 }
-                pathsInZip.add(pathInZip);
+                names.add(docTitle + "/");
+                pathInZip = currentPath + docTitle;
 
                 // _putDirectoryEntry adds the terminating "/" in the zip
-                pathInZip = StringUtils.removeEnd(pathInZip, "/");
                 ZipUtils._putDirectoryEntry(pathInZip, zipOut);
-                pathInZip += "/";
 
-                // Recursive call
-                // TODO: Do not fetch the folder, use the UID as a parameter in the function, like:
-                // processFolderish((String) map.get("ecm:uuid"), , zipOut, pathInZip);
                 uuid = (String) map.get("ecm:uuid");
-                folderish = coreSession.getDocument(new IdRef(uuid));
-                processFolderish(folderish, zipOut, pathInZip);
+                subFolders.add(new FolderToZip(uuid, pathInZip + "/"));
             }
         }
 
         // ==============================================
         // Process non-folderish children
         // ==============================================
-        // OPtimizaiton dea: do not get UID when there is no callback chain
-        // Looks like we can't get file:clontent using queryAndFetch...
-        // So, let's just get uid and fecth each doc then.
-        // TODO: certaing room for optimization here...
-        // nxql = "SELECT ecm:uuid, file:content FROM Document WHERE ecm:parentId = '" + folderishDoc.getId() + "'";
-        nxql = "SELECT ecm:uuid FROM Document WHERE ecm:parentId = '" + folderishDoc.getId() + "'";
+        // Without callback chain, the blob is read from the columns of file:content, no document is loaded
+        nxql = "SELECT ecm:uuid" + getBlobColumns() + " FROM Document WHERE ecm:parentId = '" + folder.id + "'";
         nxql += " AND ecm:mixinType != 'Folderish'";
         nxql += " AND " + getChildrenWhereClause;
 
         try (IterableQueryResult result = coreSession.queryAndFetch(nxql, NXQL.NXQL)) {
             for (Map<String, Serializable> map : result) {
 
-                uuid = (String) map.get("ecm:uuid");
-                doc = coreSession.getDocument(new IdRef(uuid));
-                blob = getDocumentBlob(doc);
+                blob = getRowBlob(map);
                 // It is ok to have a null blob
                 if (blob == null) {
                     continue;
                 }
 
                 docTitle = blob.getFilename();
-                pathInZip = currentPath + docTitle;
-                if (pathsInZip.contains(pathInZip)) {
+                if (names.contains(docTitle)) {
                     countForAvoidDuplicates += 1;
                     String baseName = FilenameUtils.getBaseName(docTitle);
                     String ext = FilenameUtils.getExtension(docTitle);
                     docTitle = baseName + "-" + countForAvoidDuplicates + "." + ext;
-                    pathInZip = currentPath + docTitle;
                 }
-                pathsInZip.add(pathInZip);
+                names.add(docTitle);
+                pathInZip = currentPath + docTitle;
+
+                putBlobEntry(blob, pathInZip, zipOut);
+            }
+        }
+
+        // Pushed in reverse order, so the subfolders are zipped in the order of the query
+        for (int i = subFolders.size() - 1; i >= 0; i--) {
+            stack.push(subFolders.get(i));
+        }
+    }
+
+    /**
+     * Same result as <code>processFolderish</code>, with a single query for the whole subtree instead of two queries
+     * per folder. The hierarchy is rebuilt from the parent of each row: the zip path of each folder, and the names used
+     * in it (to rename the duplicates), are kept until the end of the export, since the rows of a folder are not
+     * contiguous (ordered by path, <code>a/x</code> comes after <code>a-b</code>). A document whose folder was filtered
+     * out by <code>getChildrenWhereClause</code> is ignored, as the recursive mode does not visit this folder.
+     *
+     * @since 2025.2
+     */
+    protected void processSubtree(ZipOutputStream zipOut, String rootPath) throws IOException {
+
+        Set<String> folderishTypes = Framework.getService(SchemaManager.class)
+                                              .getDocumentTypeNamesForFacet(FacetNames.FOLDERISH);
+        // Folder id => its path in the zip, ending with "/"
+        Map<String, String> folderPaths = new HashMap<>();
+        // Folder id => count used to rename the duplicates in this folder
+        Map<String, Integer> duplicateCounts = new HashMap<>();
+        // Folder id => names used in this folder, kept until the end since the subtree is not read folder by folder
+        Map<String, Set<String>> namesInFolder = new HashMap<>();
+        folderPaths.put(mainDocument.getId(), rootPath.isEmpty() || rootPath.endsWith("/") ? rootPath : rootPath + "/");
+
+        String nxql = String.format(NXQL_SUBTREE, getBlobColumns(), mainDocument.getId(), getChildrenWhereClause);
+        try (IterableQueryResult result = coreSession.queryAndFetch(nxql, NXQL.NXQL)) {
+            for (Map<String, Serializable> map : result) {
+
+                String parentId = (String) map.get("ecm:parentId");
+                String currentPath = folderPaths.get(parentId);
+                if (currentPath == null) {
+                    continue;
+                }
+
+                String uuid = (String) map.get("ecm:uuid");
+                Set<String> names = namesInFolder.computeIfAbsent(parentId, k -> new HashSet<>());
+                String docTitle;
+                String pathInZip;
+                if (folderishTypes.contains(map.get("ecm:primaryType"))) {
+                    docTitle = (String) map.get("dc:title");
+                    // Folder names end with "/", they do not clash with the files
+                    if (names.contains(docTitle + "/")) {
+                        docTitle += "-" + duplicateCounts.merge(parentId, 2, (count, one) -> count + 1);
+                    }
+                    names.add(docTitle + "/");
+                    pathInZip = currentPath + docTitle + "/";
+                    folderPaths.put(uuid, pathInZip);
+
+                    // _putDirectoryEntry adds the terminating "/" in the zip
+                    ZipUtils._putDirectoryEntry(StringUtils.removeEnd(pathInZip, "/"), zipOut);
+                    continue;
+                }
+
+                Blob blob = getRowBlob(map);
+                // It is ok to have a null blob
+                if (blob == null) {
+                    continue;
+                }
+
+                docTitle = blob.getFilename();
+                if (names.contains(docTitle)) {
+                    int count = duplicateCounts.merge(parentId, 2, (c, one) -> c + 1);
+                    docTitle = FilenameUtils.getBaseName(docTitle) + "-" + count + "."
+                            + FilenameUtils.getExtension(docTitle);
+                }
+                names.add(docTitle);
+                pathInZip = currentPath + docTitle;
 
-                ZipUtils._putFileEntry(blob.getFile(), pathInZip, zipOut);
+                putBlobEntry(blob, pathInZip, zipOut);
             }
         }
+    }
+
+    protected void putBlobEntry(Blob blob, String pathInZip, ZipOutputStream zipOut) throws IOException {
+
+        if (prefetcher != null) {
+            prefetcher.put(blob, pathInZip);
+            return;
+        }
+
+        // From the stream, the blob may not be a local file
+        zipOut.putNextEntry(new ZipEntry(pathInZip));
+        try (InputStream in = blob.getStream()) {
+            IOUtils.copy(in, zipOut);
+        }
+        zipOut.closeEntry();
+    }
+
+    protected String getBlobColumns() {
+        return getBlobCallbackChain == null ? ", " + BLOB_COLUMNS : "";
+    }
+
+    /**
+     * Returns the blob of the document of a query <code>row</code>. Without callback chain, the blob is built from the
+     * <code>BLOB_COLUMNS</code> and resolved by the <code>DocumentBlobManager</code>, so the document is not loaded.
+     *
+     * @since 2025.2
+     */
+    protected Blob getRowBlob(Map<String, Serializable> row) throws IOException {
+
+        if (getBlobCallbackChain != null) {
+            return getDocumentBlob(coreSession.getDocument(new IdRef((String) row.get("ecm:uuid"))));
+        }
 
+        String key = (String) row.get("file:content/data");
+        // No file schema, or no blob
+        if (StringUtils.isBlank(key)) {
+            return null;
+        }
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = key;
+        blobInfo.filename = (String) row.get("file:content/name");
+        blobInfo.mimeType = (String) row.get("file:content/mime-type");
+        blobInfo.encoding = (String) row.get("file:content/encoding");
+        blobInfo.digest = (String) row.get("file:content/digest");
+        blobInfo.length = (Long) row.get("file:content/length");
+        return Framework.getService(DocumentBlobManager.class).readBlob(blobInfo, coreSession.getRepositoryName());
     }
 
     protected Blob getDocumentBlob(DocumentModel doc) {
@@ -323,4 +543,30 @@ public class ZipFolderish {
 
     }
 
+    /**
+     * When <code>true</code>, the whole subtree is read with a single query instead of two queries per folder. Much
+     * faster on trees with a lot of folders. The entries are the same, only their order in the zip changes. The names
+     * of all the entries are kept in memory until the end of the export, when the recursive mode only keeps the ones
+     * of the folder being exported: for a very large tree, it needs memory in proportion to its number of documents.
+     *
+     * @since 2025.2
+     */
+    public void setSingleQuery(boolean singleQuery) {
+        this.singleQuery = singleQuery;
+    }
+
+    /**
+     * Reads up to <code>blobs</code> blobs ahead, on as many threads, while the current one is compressed. Useful with
+     * a remote blob store. The blobs read ahead are held in memory, up to <code>maxBytes</code>. See
+     * <code>BlobPrefetcher</code>.
+     *
+     * @param blobs 0 to read the blobs one after the other (the default)
+     * @param maxBytes <code>BlobPrefetcher.DEFAULT_MAX_BYTES</code> if lower than 1
+     * @since 2025.2
+     */
+    public void setPrefetch(int blobs, long maxBytes) {
+        prefetchBlobs = Math.max(blobs, 0);
+        prefetchMaxBytes = maxBytes < 1 ? BlobPrefetcher.DEFAULT_MAX_BYTES : maxBytes;
+    }
+
 }
@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.nuxeo.ecm.core.api.impl.blob.AbstractBlob;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * The archive of a <code>ZipFolderish</code>, written while it is read: the first bytes are available right away and
+ * nothing is stored on disk, whatever the size of the folder.
+ * <p>
+ * <code>transferTo(OutputStream)</code> writes the archive in the calling thread. <code>getStream()</code> writes it
+ * in another thread, through a pipe, so the reader gets the bytes as they are produced, and closing the stream before
+ * its end stops that thread. Each of them zips the folder again, and the blob is only valid as long as the session of
+ * the folder is.
+ *
+ * @since 2025.2
+ */
+public class ZipFolderishBlob extends AbstractBlob {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final int PIPE_SIZE = 1024 * 1024;
+
+    protected final transient ZipFolderish zipFolderish;
+
+    protected final boolean doNotCreateMainFolder;
+
+    public ZipFolderishBlob(ZipFolderish zipFolderish, boolean doNotCreateMainFolder) {
+        this.zipFolderish = zipFolderish;
+        this.doNotCreateMainFolder = doNotCreateMainFolder;
+        setFilename(zipFolderish.getMainDocument().getTitle() + ".zip");
+        setMimeType("application/zip");
+    }
+
+    @Override
+    public void transferTo(OutputStream out) throws IOException {
+        zipFolderish.write(out, doNotCreateMainFolder);
+    }
+
+    @Override
+    public InputStream getStream() throws IOException {
+
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        AtomicReference<Exception> error = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            try {
+                TransactionHelper.runInTransaction(() -> {
+                    try {
+                        zipFolderish.write(out, doNotCreateMainFolder);
+                    } catch (IOException | RuntimeException e) {
+                        TransactionHelper.setTransactionRollbackOnly();
+                        error.set(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                error.compareAndSet(null, e);
+            } finally {
+                // Only once the error is recorded: the reader must not see the end of a truncated archive first
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // The reader is gone
+                }
+            }
+        }, "ZipFolderish-" + getFilename());
+        writer.setDaemon(true);
+        writer.start();
+
+        // A truncated archive must not look complete
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+                return checkError(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return checkError(super.read(b, off, len));
+            }
+
+            protected int checkError(int n) throws IOException {
+                if (n < 0 && error.get() != null) {
+                    throw new IOException("Cannot zip " + getFilename(), error.get());
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                // The writer fails on its next write, or wakes up if it waits for the reader
+                super.close();
+                writer.interrupt();
+            }
+        };
+    }
+
+    @Override
+    public long getLength() {
+        return -1;
+    }
+
+}
@@ -0,0 +1,130 @@
+package nuxeo.zip.utils.operations;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+import nuxeo.zip.utils.EntryFilter;
+import nuxeo.zip.utils.UnzipPreflight;
+import nuxeo.zip.utils.UnzipToDocuments;
+
+/**
+ * Computes what {@link UnzipToDocumentsOp} would do, without importing anything.
+ *
+ * @since 2025.2
+ */
+@Operation(id = PlanUnzipOp.ID, category = Constants.CAT_BLOB, label = "ZipUtils: Plan Unzip", description = ""
+        + "Reads only the central directory of a zip archive and returns, as a JSON blob, what ZipUtils.UnzipToDocuments"
+        + " would do: folders and files (number of Documents to create), bytes (total uncompressed size), unknownSizes"
+        + " (entries without a size in the central directory), maxDepth, largest (the largestCount largest entries, name"
+        + " and size), collisions (names already used by children of the target) and estimatedSeconds (based on the"
+        + " throughput of the recent imports, null if there was none)."
+        + " Input, xpath, target, mainFolderishName, mapRoot, include, exclude, minSizeKB and maxSizeMB are the same as for"
+        + " ZipUtils.UnzipToDocuments."
+        + " The operation fails right away when the archive extracts more than maxMB, has more than maxFiles files, has an"
+        + " entry bigger than maxEntryMB (0, the default, disables each limit), or would exceed the size quota of the"
+        + " target or of one of its ancestors.")
+public class PlanUnzipOp {
+
+    public static final String ID = "ZipUtils.PlanUnzip";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "xpath", required = false, values = { "file:content" })
+    protected String xpath = "file:content";
+
+    @Param(name = "target", required = false)
+    protected DocumentModel target;
+
+    @Param(name = "mainFolderishName", required = false)
+    protected String mainFolderishName;
+
+    @Param(name = "mapRoot", required = false, values = { "false" })
+    protected Boolean mapRoot = false;
+
+    @Param(name = "largestCount", required = false, values = { "10" })
+    protected Integer largestCount = UnzipPreflight.DEFAULT_LARGEST_COUNT;
+
+    @Param(name = "maxMB", required = false, values = { "0" })
+    protected Integer maxMB = 0;
+
+    @Param(name = "maxFiles", required = false, values = { "0" })
+    protected Integer maxFiles = 0;
+
+    @Param(name = "maxEntryMB", required = false, values = { "0" })
+    protected Integer maxEntryMB = 0;
+
+    @Param(name = "include", required = false)
+    protected String include;
+
+    @Param(name = "exclude", required = false)
+    protected String exclude;
+
+    @Param(name = "minSizeKB", required = false, values = { "0" })
+    protected Integer minSizeKB = 0;
+
+    @Param(name = "maxSizeMB", required = false, values = { "0" })
+    protected Integer maxSizeMB = 0;
+
+    @OperationMethod
+    public Blob run(DocumentModel input) {
+
+        if (input == null) {
+            return null;
+        }
+
+        if (target == null) {
+            target = session.getDocument(input.getParentRef());
+        }
+
+        if (StringUtils.isBlank(xpath)) {
+            xpath = "file:content";
+        }
+
+        return doPlan((Blob) input.getPropertyValue(xpath));
+    }
+
+    @OperationMethod
+    public Blob run(Blob input) {
+
+        if (input == null) {
+            return null;
+        }
+
+        if (target == null) {
+            throw new IllegalArgumentException("The target parameter cannot be empty with BLOB input.");
+        }
+
+        return doPlan(input);
+    }
+
+    protected Blob doPlan(Blob zipBlob) {
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(target, zipBlob);
+        if (StringUtils.isNotBlank(mainFolderishName)) {
+            unzipToDocs.setRootFolderishName(mainFolderishName);
+        }
+        unzipToDocs.setMapRoot(Boolean.TRUE.equals(mapRoot));
+        unzipToDocs.setEntryFilter(EntryFilter.parse(include, exclude, minSizeKB == null ? 0 : minSizeKB * 1024L,
+                maxSizeMB == null ? 0 : maxSizeMB * 1024L * 1024L));
+
+        UnzipPreflight preflight = unzipToDocs.preflight(largestCount == null ? 0 : largestCount);
+        preflight.checkLimits(toBytes(maxMB), maxFiles == null ? 0 : maxFiles, toBytes(maxEntryMB));
+        preflight.checkQuota(session, target);
+
+        return Blobs.createJSONBlob(preflight.toJSON());
+    }
+
+    protected static long toBytes(Integer mb) {
+        return mb == null ? 0 : mb * 1024L * 1024L;
+    }
+
+}
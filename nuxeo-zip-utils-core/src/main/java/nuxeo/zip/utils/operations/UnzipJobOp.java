@@ -0,0 +1,69 @@
+package nuxeo.zip.utils.operations;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentSecurityException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nuxeo.zip.utils.UnzipJob;
+
+/**
+ * Returns the progress of an import started with {@link UnzipToDocumentsOp} in async mode, and cancels it.
+ *
+ * @since 2025.2
+ */
+@Operation(id = UnzipJobOp.ID, category = Constants.CAT_BLOB, label = "ZipUtils: Unzip Job", description = ""
+        + "Returns the status of an import started by ZipUtils.UnzipToDocuments with async = true, as a JSON blob: state"
+        + " (scheduled, running, completed, failed or cancelled), filename, username (who started it), rootDocumentId,"
+        + " totalEntries and totalBytes (zip files only), entries and bytes done, entriesPerSecond, bytesPerSecond,"
+        + " etaSeconds, submitted, started and"
+        + " completed (timestamps in ms), cancelRequested, error and summary (the import summary, once completed)."
+        + " With cancel, the import is first asked to stop at the next entry: what was imported is kept (and can be"
+        + " resumed with resume = true). Only the user who started the import, or an administrator, can cancel it."
+        + " Returns null if jobId is unknown.")
+public class UnzipJobOp {
+
+    public static final String ID = "ZipUtils.UnzipJob";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "jobId", required = true)
+    protected String jobId;
+
+    @Param(name = "cancel", required = false, values = { "false" })
+    protected Boolean cancel = false;
+
+    @OperationMethod
+    public Blob run() throws IOException {
+
+        Map<String, Serializable> status = UnzipJob.get(jobId);
+        if (status == null) {
+            return null;
+        }
+
+        if (Boolean.TRUE.equals(cancel)) {
+            if (!UnzipJob.canCancel(jobId, session.getPrincipal())) {
+                throw new DocumentSecurityException(
+                        "Only the user who started the import or an administrator can cancel it");
+            }
+            if (UnzipJob.cancel(jobId)) {
+                status = UnzipJob.get(jobId);
+            }
+        }
+
+        return Blobs.createJSONBlob(new ObjectMapper().writeValueAsString(status));
+    }
+
+}
@@ -0,0 +1,46 @@
+package nuxeo.zip.utils.operations;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nuxeo.zip.utils.UnzipStatus;
+
+/**
+ * Returns the status of an import started with {@link UnzipToDocumentsDistributedOp}.
+ *
+ * @since 2025.2
+ */
+@Operation(id = UnzipStatusOp.ID, category = Constants.CAT_BLOB, label = "ZipUtils: Unzip Status", description = ""
+        + "Returns the status of an import started by ZipUtils.UnzipToDocumentsDistributed, as a JSON blob: state"
+        + " (running or completed), rootDocumentId, totalEntries, processedEntries, totalRanges, completedRanges, errors"
+        + " (number of ranges which failed), submitted and completed (timestamps in ms)."
+        + " Returns null if commandId is unknown.")
+public class UnzipStatusOp {
+
+    public static final String ID = "ZipUtils.UnzipStatus";
+
+    @Param(name = "commandId", required = true)
+    protected String commandId;
+
+    @OperationMethod
+    public Blob run() throws IOException {
+
+        Map<String, Serializable> status = UnzipStatus.get(commandId);
+        if (status == null) {
+            return null;
+        }
+
+        return Blobs.createJSONBlob(new ObjectMapper().writeValueAsString(status));
+    }
+
+}
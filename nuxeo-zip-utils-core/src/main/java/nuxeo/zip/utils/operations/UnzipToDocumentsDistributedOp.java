@@ -0,0 +1,172 @@
+package nuxeo.zip.utils.operations;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.Properties;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+import nuxeo.zip.utils.EntryFilter;
+import nuxeo.zip.utils.TypeMapping;
+import nuxeo.zip.utils.UnzipToDocuments;
+
+/**
+ * Same as {@link UnzipToDocumentsOp}, but the files are imported by all the nodes of the cluster.
+ *
+ * @since 2025.2
+ */
+@Operation(id = UnzipToDocumentsDistributedOp.ID, category = Constants.CAT_BLOB, label = "ZipUtils: Unzip to Documents (Distributed)", description = ""
+        + "Same as ZipUtils.UnzipToDocuments, but distributed on the cluster: the operation reads the central directory,"
+        + " creates the root Document and all the folders, then publishes ranges of rangeSize entries in a stream. The files"
+        + " of each range are imported by any node, committing as set by commitModulo, commitMaxMB, commitMaxSeconds,"
+        + " commitTimeoutPercent and largeEntryMB, deduplicating as set by deduplicate, mapping types as set by typeMapping and"
+        + " selecting the files as set by include, exclude, minSizeKB and maxSizeMB (see"
+        + " ZipUtils.UnzipToDocuments)."
+        + " Returns the root Document right away (its content is being imported)"
+        + " and sets the zipInfo_unzipCommandId Context Variable, to be passed to ZipUtils.UnzipStatus to follow the import.")
+public class UnzipToDocumentsDistributedOp {
+
+    public static final String ID = "ZipUtils.UnzipToDocumentsDistributed";
+
+    public static final String CONTEXT_VAR_COMMAND_ID = "zipInfo_unzipCommandId";
+
+    @Context
+    protected CoreSession session;
+
+    @Context
+    protected OperationContext ctx;
+
+    @Param(name = "target", required = false)
+    protected DocumentModel target;
+
+    @Param(name = "xpath", required = false, values = { "file:content" })
+    protected String xpath = "file:content";
+
+    @Param(name = "folderishType", required = false, values = { "Folder" })
+    protected String folderishType = "Folder";
+
+    @Param(name = "commitModulo", required = false, values = { "100" })
+    protected Integer commitModulo = 100;
+
+    @Param(name = "mainFolderishType", required = false, values = { "Folder" })
+    protected String mainFolderishType = "Folder";
+
+    @Param(name = "mainFolderishName", required = false)
+    protected String mainFolderishName;
+
+    @Param(name = "mapRoot", required = false, values = { "false" })
+    protected Boolean mapRoot = false;
+
+    @Param(name = "commitMaxMB", required = false, values = { "0" })
+    protected Integer commitMaxMB = 0;
+
+    @Param(name = "commitMaxSeconds", required = false, values = { "0" })
+    protected Integer commitMaxSeconds = 0;
+
+    @Param(name = "commitTimeoutPercent", required = false, values = { "80" })
+    protected Integer commitTimeoutPercent = 80;
+
+    @Param(name = "largeEntryMB", required = false, values = { "100" })
+    protected Integer largeEntryMB = 100;
+
+    @Param(name = "batchMode", required = false, values = { "false" })
+    protected Boolean batchMode = false;
+
+    @Param(name = "batchFileType", required = false, values = { "File" })
+    protected String batchFileType = "File";
+
+    @Param(name = "deduplicate", required = false, values = { "false" })
+    protected Boolean deduplicate = false;
+
+    @Param(name = "typeMapping", required = false)
+    protected Properties typeMapping;
+
+    @Param(name = "include", required = false)
+    protected String include;
+
+    @Param(name = "exclude", required = false)
+    protected String exclude;
+
+    @Param(name = "minSizeKB", required = false, values = { "0" })
+    protected Integer minSizeKB = 0;
+
+    @Param(name = "maxSizeMB", required = false, values = { "0" })
+    protected Integer maxSizeMB = 0;
+
+    @Param(name = "rangeSize", required = false, values = { "1000" })
+    protected Integer rangeSize = 1000;
+
+    @OperationMethod
+    public DocumentModel run(DocumentModel input) {
+
+        if (input == null) {
+            return null;
+        }
+
+        if (target == null) {
+            target = session.getDocument(input.getParentRef());
+        }
+
+        if (StringUtils.isBlank(xpath)) {
+            xpath = "file:content";
+        }
+
+        return doUnzip((Blob) input.getPropertyValue(xpath));
+    }
+
+    @OperationMethod
+    public DocumentModel run(Blob input) {
+
+        if (input == null) {
+            return null;
+        }
+
+        if (target == null) {
+            throw new IllegalArgumentException("The target parameter cannot be empty with BLOB input.");
+        }
+
+        return doUnzip(input);
+    }
+
+    protected DocumentModel doUnzip(Blob zipBlob) {
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(target, zipBlob);
+        unzipToDocs.setChildFolderishType(folderishType);
+        unzipToDocs.setCommitModulo(commitModulo);
+        if (commitMaxMB != null) {
+            unzipToDocs.setCommitMaxBytes(commitMaxMB * 1024L * 1024L);
+        }
+        if (commitMaxSeconds != null) {
+            unzipToDocs.setCommitMaxSeconds(commitMaxSeconds);
+        }
+        if (commitTimeoutPercent != null) {
+            unzipToDocs.setCommitTimeoutFraction(commitTimeoutPercent / 100.0);
+        }
+        if (largeEntryMB != null) {
+            unzipToDocs.setLargeEntryThreshold(largeEntryMB * 1024L * 1024L);
+        }
+        unzipToDocs.setRootFolderishType(mainFolderishType);
+        unzipToDocs.setRootFolderishName(mainFolderishName);
+        unzipToDocs.setMapRoot(mapRoot);
+        unzipToDocs.setBatchMode(batchMode == null ? false : batchMode);
+        unzipToDocs.setBatchFileType(batchFileType);
+        unzipToDocs.setDeduplicate(deduplicate == null ? false : deduplicate);
+        if (typeMapping != null) {
+            unzipToDocs.setTypeMapping(new TypeMapping(typeMapping));
+        }
+        unzipToDocs.setEntryFilter(EntryFilter.parse(include, exclude, minSizeKB == null ? 0 : minSizeKB * 1024L,
+                maxSizeMB == null ? 0 : maxSizeMB * 1024L * 1024L));
+
+        String commandId = unzipToDocs.runDistributed(rangeSize == null ? UnzipToDocuments.DEFAULT_RANGE_SIZE : rangeSize);
+        ctx.put(CONTEXT_VAR_COMMAND_ID, commandId);
+
+        return unzipToDocs.getRootDocument();
+    }
+
+}
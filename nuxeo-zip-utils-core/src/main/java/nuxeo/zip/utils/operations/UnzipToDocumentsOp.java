@@ -1,5 +1,10 @@
 package nuxeo.zip.utils.operations;
 
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.commons.lang3.StringUtils;
 import org.nuxeo.ecm.automation.OperationContext;
 import org.nuxeo.ecm.automation.core.Constants;
@@ -7,12 +12,19 @@ import org.nuxeo.ecm.automation.core.annotations.Context;
 import org.nuxeo.ecm.automation.core.annotations.Operation;
 import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
 import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.Properties;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
 
+import nuxeo.zip.utils.BulkImportMode;
+import nuxeo.zip.utils.EntryFilter;
+import nuxeo.zip.utils.NestedArchiveLimits;
+import nuxeo.zip.utils.TypeMapping;
 import nuxeo.zip.utils.UnzipToDocuments;
+import nuxeo.zip.utils.UnzipWork;
 
 /**
  * TODO: if `target` is passed, don't override it.
@@ -20,6 +32,7 @@ import nuxeo.zip.utils.UnzipToDocuments;
 @Operation(id = UnzipToDocumentsOp.ID, category = Constants.CAT_BLOB, label = "ZipUtils: Unzip to Documents", description = ""
         + "Extracts an archive and imports the files as Documents, creating the same structure."
         + " Note that in all cases the operation creates a root Document at the target."
+        + " All the folders are created first, then the files are imported folder by folder."
         + " When input is a Blob, the target parameter is required. When input is a Document, the blob is read using the xpath,"
         + " from file:content by default, and the target is the parent of input."
         + " The operation does nothing if the input is null."
@@ -32,6 +45,52 @@ import nuxeo.zip.utils.UnzipToDocuments;
         + " With regards to mapRoot: sometimes a zip file contains a single root folder and, thus, you want the root Document to"
         + " be this folder - use mapRoot = true in this case. Other times the root Document is just a container to contain all"
         + " the extracted content - use mapRoot = false in this case."
+        + " With parallelism greater than 1, the subtrees of the archive are imported in parallel, each thread using its own"
+        + " session and transaction, logged in as the current user (resume is not supported)."
+        + " With pipelineThreads greater than 0 (and a parallelism of 1), the files of a zip archive are inflated and uploaded"
+        + " to the blob provider by these threads, at most pipelineCapacity ahead (4 per thread by default), while the"
+        + " transaction thread creates the Documents. Deduplicated, synced, nested and large files are still extracted by"
+        + " the transaction thread. The import summary then gives the queue depth and throughput of both stages."
+        + " With batchMode, new Documents are built with all their properties and created in bulk, by parent, before each"
+        + " commit. New files are then created as batchFileType (File by default) without going through the FileManager."
+        + " The transaction is also committed when the files extracted since the last commit reach commitMaxMB, when it has"
+        + " been running for commitMaxSeconds, or when it has used commitTimeoutPercent of its timeout (0 disables each of"
+        + " them, only the last one is enabled by default, at 80). Files of at least largeEntryMB (100 by default) are"
+        + " extracted outside of any transaction. Files of at most smallEntryKB (64 by default, 0 to disable) are read in a"
+        + " reused memory buffer and uploaded from it. The zipInfo_importSummary Context Variable is set to a JSON string"
+        + " telling which policy triggered each commit."
+        + " With deduplicate, a file whose content was already imported with deduplicate references the existing binary"
+        + " instead of being uploaded again: the CRC and size of the entry are stored on the Document (ZipEntry facet) and"
+        + " looked up first, the digest of the file is only computed when they match."
+        + " With sync, a new version of an archive imported before with sync only updates what changed: the root Document"
+        + " is reused, files whose CRC and size did not change are skipped, the other ones are imported, and with"
+        + " syncTrashRemoved the files no longer in the archive are moved to the trash."
+        + " With bulkMode, the imported Documents carry the context data flags listed in bulkModeFlags (comma separated,"
+        + " disabling the DublinCore, indexing, thumbnail, picture views and video conversions listeners for them by"
+        + " default), then the Bulk Actions listed in bulkModeActions (recomputeThumbnails, recomputeViews,"
+        + " recomputeVideoConversions and index by default, when registered) are run on these Documents, with one Bulk"
+        + " command per action (the root of the import and its descendants modified since the import started)."
+        + " typeMapping maps file extensions (pdf), mime types (image/png) or families (image/*) to a Document type, and"
+        + " optionally the xpath of the blob (Picture, or Scan:scan:original): matching files are created directly, the other"
+        + " ones are imported by the FileManager."
+        + " A checkpoint is saved at each commit of a sequential import: if it fails, running it again with resume = true,"
+        + " on the same archive and target, restarts after the last committed entry instead of from scratch."
+        + " Besides zip, tar (possibly compressed), cpio, ar and 7z archives are read in a single streaming pass, without"
+        + " parallelism, resume, deduplicate or sync. A single compressed file (report.pdf.gz) is imported as one Document"
+        + " in the target, which is returned."
+        + " With streaming, a zip archive is read in a single pass through the stream of the blob, without copying it to a"
+        + " local file first (the Documents are created as the bytes arrive), like the other formats: only the entries"
+        + " which cannot be streamed are read at the end from the central directory, which requires the local copy."
+        + " With nestedMaxDepth greater than 0, the zip and tar files found in the archive are expanded too, each in a folder"
+        + " named after it, down to this nesting level. The import fails when the nested archives extract more than"
+        + " nestedMaxMB (10240 by default) or when a nested archive has a compression ratio above nestedMaxRatio (100 by"
+        + " default), 0 disabling these limits."
+        + " include and exclude are comma separated globs (*.tif, images/**/*.tif) selecting the files to import, with"
+        + " minSizeKB and maxSizeMB (0, the default, disables each bound): they are evaluated before anything is extracted,"
+        + " and the folders containing no selected file are not created."
+        + " With async, the import is scheduled in the zipUtilsUnzip work queue and the operation returns the target right"
+        + " away, setting the zipInfo_unzipJobId Context Variable, to be passed to ZipUtils.UnzipJob to follow or cancel"
+        + " the import."
         + " Returns the created root Folderish Document.")
 public class UnzipToDocumentsOp {
 
@@ -39,6 +98,8 @@ public class UnzipToDocumentsOp {
 
     public static final String CONTEXT_VAR_NAME = "zipInfo_isZip";
 
+    public static final String CONTEXT_VAR_IMPORT_SUMMARY = "zipInfo_importSummary";
+
     @Context
     protected CoreSession session;
 
@@ -66,6 +127,87 @@ public class UnzipToDocumentsOp {
     @Param(name = "mapRoot", required = false, values = { "false" })
     protected Boolean mapRoot = false;
 
+    @Param(name = "commitMaxMB", required = false, values = { "0" })
+    protected Integer commitMaxMB = 0;
+
+    @Param(name = "commitMaxSeconds", required = false, values = { "0" })
+    protected Integer commitMaxSeconds = 0;
+
+    @Param(name = "commitTimeoutPercent", required = false, values = { "80" })
+    protected Integer commitTimeoutPercent = 80;
+
+    @Param(name = "largeEntryMB", required = false, values = { "100" })
+    protected Integer largeEntryMB = 100;
+
+    @Param(name = "smallEntryKB", required = false, values = { "64" })
+    protected Integer smallEntryKB = 64;
+
+    @Param(name = "parallelism", required = false, values = { "1" })
+    protected Integer parallelism = 1;
+
+    @Param(name = "pipelineThreads", required = false, values = { "0" })
+    protected Integer pipelineThreads = 0;
+
+    @Param(name = "pipelineCapacity", required = false, values = { "0" })
+    protected Integer pipelineCapacity = 0;
+
+    @Param(name = "batchMode", required = false, values = { "false" })
+    protected Boolean batchMode = false;
+
+    @Param(name = "batchFileType", required = false, values = { "File" })
+    protected String batchFileType = "File";
+
+    @Param(name = "deduplicate", required = false, values = { "false" })
+    protected Boolean deduplicate = false;
+
+    @Param(name = "sync", required = false, values = { "false" })
+    protected Boolean sync = false;
+
+    @Param(name = "syncTrashRemoved", required = false, values = { "false" })
+    protected Boolean syncTrashRemoved = false;
+
+    @Param(name = "bulkMode", required = false, values = { "false" })
+    protected Boolean bulkMode = false;
+
+    @Param(name = "bulkModeFlags", required = false)
+    protected String bulkModeFlags;
+
+    @Param(name = "bulkModeActions", required = false)
+    protected String bulkModeActions;
+
+    @Param(name = "typeMapping", required = false)
+    protected Properties typeMapping;
+
+    @Param(name = "resume", required = false, values = { "false" })
+    protected Boolean resume = false;
+
+    @Param(name = "streaming", required = false, values = { "false" })
+    protected Boolean streaming = false;
+
+    @Param(name = "include", required = false)
+    protected String include;
+
+    @Param(name = "exclude", required = false)
+    protected String exclude;
+
+    @Param(name = "minSizeKB", required = false, values = { "0" })
+    protected Integer minSizeKB = 0;
+
+    @Param(name = "maxSizeMB", required = false, values = { "0" })
+    protected Integer maxSizeMB = 0;
+
+    @Param(name = "async", required = false, values = { "false" })
+    protected Boolean async = false;
+
+    @Param(name = "nestedMaxDepth", required = false, values = { "0" })
+    protected Integer nestedMaxDepth = 0;
+
+    @Param(name = "nestedMaxMB", required = false, values = { "10240" })
+    protected Integer nestedMaxMB = 10240;
+
+    @Param(name = "nestedMaxRatio", required = false, values = { "100" })
+    protected Integer nestedMaxRatio = 100;
+
     @OperationMethod
     public DocumentModel run(DocumentModel input) {
 
@@ -108,15 +250,85 @@ public class UnzipToDocumentsOp {
 
     protected DocumentModel doUnzip(Blob zipBlob) {
 
+        if (Boolean.TRUE.equals(async)) {
+            ctx.put(UnzipWork.CONTEXT_VAR_JOB_ID, UnzipWork.schedule(target, zipBlob, getParams()));
+            return target;
+        }
+
         UnzipToDocuments unzipToDocs = new UnzipToDocuments(target, zipBlob);
+        // Set when run by an UnzipWork
+        unzipToDocs.setJobId((String) ctx.get(UnzipWork.CONTEXT_VAR_JOB_ID));
         unzipToDocs.setChildFolderishType(folderishType);
         unzipToDocs.setCommitModulo(commitModulo);
+        if (commitMaxMB != null) {
+            unzipToDocs.setCommitMaxBytes(commitMaxMB * 1024L * 1024L);
+        }
+        if (commitMaxSeconds != null) {
+            unzipToDocs.setCommitMaxSeconds(commitMaxSeconds);
+        }
+        if (commitTimeoutPercent != null) {
+            unzipToDocs.setCommitTimeoutFraction(commitTimeoutPercent / 100.0);
+        }
+        if (largeEntryMB != null) {
+            unzipToDocs.setLargeEntryThreshold(largeEntryMB * 1024L * 1024L);
+        }
+        if (smallEntryKB != null) {
+            unzipToDocs.setSmallEntryThreshold(smallEntryKB * 1024);
+        }
         unzipToDocs.setRootFolderishType(mainFolderishType);
         unzipToDocs.setRootFolderishName(mainFolderishName);
         unzipToDocs.setMapRoot(mapRoot);
+        unzipToDocs.setParallelism(parallelism == null ? 1 : parallelism);
+        unzipToDocs.setPipeline(pipelineThreads == null ? 0 : pipelineThreads,
+                pipelineCapacity == null ? 0 : pipelineCapacity);
+        unzipToDocs.setBatchMode(batchMode == null ? false : batchMode);
+        unzipToDocs.setBatchFileType(batchFileType);
+        unzipToDocs.setResume(resume == null ? false : resume);
+        unzipToDocs.setStreaming(streaming == null ? false : streaming);
+        unzipToDocs.setDeduplicate(deduplicate == null ? false : deduplicate);
+        unzipToDocs.setSync(sync == null ? false : sync);
+        unzipToDocs.setSyncTrashRemoved(syncTrashRemoved == null ? false : syncTrashRemoved);
+        if (typeMapping != null) {
+            unzipToDocs.setTypeMapping(new TypeMapping(typeMapping));
+        }
+        unzipToDocs.setEntryFilter(EntryFilter.parse(include, exclude, minSizeKB == null ? 0 : minSizeKB * 1024L,
+                maxSizeMB == null ? 0 : maxSizeMB * 1024L * 1024L));
+        if (nestedMaxDepth != null && nestedMaxDepth > 0) {
+            unzipToDocs.setNestedArchiveLimits(new NestedArchiveLimits(nestedMaxDepth,
+                    nestedMaxMB == null ? 0 : nestedMaxMB * 1024L * 1024L, nestedMaxRatio == null ? 0 : nestedMaxRatio));
+        }
+        if (Boolean.TRUE.equals(bulkMode)) {
+            unzipToDocs.setBulkImportMode(new BulkImportMode(BulkImportMode.parseNames(bulkModeFlags),
+                    BulkImportMode.parseNames(bulkModeActions)));
+        }
         DocumentModel result = unzipToDocs.run();
+        ctx.put(CONTEXT_VAR_IMPORT_SUMMARY, unzipToDocs.getImportSummary().toJSON());
 
         return result;
     }
 
+    /**
+     * Returns the parameters of the operation, but the target, to run it again in an <code>UnzipWork</code>.
+     */
+    protected Map<String, Serializable> getParams() {
+
+        Map<String, Serializable> params = new HashMap<>();
+        for (Field field : UnzipToDocumentsOp.class.getDeclaredFields()) {
+            Param param = field.getAnnotation(Param.class);
+            if (param == null || "target".equals(param.name()) || "async".equals(param.name())) {
+                continue;
+            }
+            try {
+                Object value = field.get(this);
+                if (value != null) {
+                    params.put(param.name(), (Serializable) value);
+                }
+            } catch (IllegalAccessException e) {
+                throw new NuxeoException(e);
+            }
+        }
+
+        return params;
+    }
+
 }
@@ -21,7 +21,11 @@ import nuxeo.zip.utils.ZipFolderish;
         + " returns the zipped blob."
         + " By default, it uses file:content. This can be overriden by passing the ID of a chain/operation in callbackChain (the chain receives a Document, must return a blob)"
         + " It is also possible to override the default WHERE clause added to filter children (typical not hidden, not a version, ...)"
-        + " when doNotCreateMainFolder is true, the zip archive TOC does not start with the title of the input folder ")
+        + " when doNotCreateMainFolder is true, the zip archive TOC does not start with the title of the input folder."
+        + " When streaming is true, the archive is written while the returned blob is read, without temporary file."
+        + " When singleQuery is true, the whole subtree is read with one query instead of two queries per folder."
+        + " prefetch is the number of blobs read ahead while zipping (useful with a remote blob store),"
+        + " holding at most prefetchMB in memory")
 public class ZipFolderishOp {
 
     public static final String ID = "ZipUtils.ZipFolderish";
@@ -43,6 +47,18 @@ public class ZipFolderishOp {
     @Param(name = "doNotCreateMainFolder", required = false)
     protected Boolean doNotCreateMainFolder = null;
 
+    @Param(name = "streaming", required = false, values = { "false" })
+    protected Boolean streaming = false;
+
+    @Param(name = "singleQuery", required = false, values = { "false" })
+    protected Boolean singleQuery = false;
+
+    @Param(name = "prefetch", required = false, values = { "0" })
+    protected Integer prefetch = 0;
+
+    @Param(name = "prefetchMB", required = false, values = { "64" })
+    protected Integer prefetchMB = 64;
+
     @OperationMethod
     public Blob run(DocumentModel input) throws IOException {
 
@@ -53,8 +69,12 @@ public class ZipFolderishOp {
         ZipFolderish zipFolderish = new ZipFolderish(input);
         zipFolderish.setGetBlolbCallbackChain(callbackChain);
         zipFolderish.setGetCchildrenWhereClause(whereClauseOverride);
+        zipFolderish.setSingleQuery(Boolean.TRUE.equals(singleQuery));
+        zipFolderish.setPrefetch(prefetch == null ? 0 : prefetch,
+                (prefetchMB == null ? 64 : prefetchMB) * 1024L * 1024L);
 
-        Blob result = zipFolderish.run(doNotCreateMainFolder == null ? false : doNotCreateMainFolder);
+        boolean noMainFolder = doNotCreateMainFolder == null ? false : doNotCreateMainFolder;
+        Blob result = Boolean.TRUE.equals(streaming) ? zipFolderish.runStreaming(noMainFolder) : zipFolderish.run(noMainFolder);
 
         return result;
     }
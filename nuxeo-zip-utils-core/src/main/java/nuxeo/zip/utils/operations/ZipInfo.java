@@ -2,9 +2,13 @@ package nuxeo.zip.utils.operations;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.nuxeo.ecm.automation.OperationContext;
 import org.nuxeo.ecm.automation.core.Constants;
 import org.nuxeo.ecm.automation.core.annotations.Context;
@@ -20,7 +24,9 @@ import org.nuxeo.ecm.core.api.DocumentModel;
 @Operation(id = ZipInfo.ID, category = Constants.CAT_BLOB, label = "ZipUtils: Zip Info", description = "Return info about the zip in Context Variables: "
         + " zipInfo_countFiles, zipInfo_countDirectories, and zipInfo_comment."
         + " If the input is a document, use xpath for the blob to use (default is file:content)."
-        + " Assumes the blob is a zip. Returns the input unchanged.")
+        + " Assumes the blob is a zip. Returns the input unchanged."
+        + " With streaming, the blob is read through its stream instead of a local file (no download of a remote blob to"
+        + " the disk), but the comment is not available (always empty).")
 public class ZipInfo {
 
     public static final String ID = "ZipUtils.ZipInfo";
@@ -37,6 +43,9 @@ public class ZipInfo {
     @Param(name = "xpath", required = false, values = { "file:content" })
     protected String xpath = "file:content";
 
+    @Param(name = "streaming", required = false, values = { "false" })
+    protected Boolean streaming = false;
+
     @OperationMethod
     public DocumentModel run(DocumentModel input) throws IOException {
 
@@ -66,7 +75,20 @@ public class ZipInfo {
         ctx.put(CTX_VAR_COUNT_FILES, -1);
         ctx.put(CTX_VAR_COUNT_DIRECTORIES, -1);
 
-        if (input != null) {
+        if (input != null && Boolean.TRUE.equals(streaming)) {
+            // Lenient, entries are only skipped
+            try (ZipArchiveInputStream zipIn = new ZipArchiveInputStream(input.getStream(),
+                    StandardCharsets.UTF_8.name(), true, true)) {
+                ArchiveEntry entry;
+                while ((entry = zipIn.getNextEntry()) != null) {
+                    if (entry.isDirectory()) {
+                        countDirectories += 1;
+                    } else {
+                        countFiles += 1;
+                    }
+                }
+            }
+        } else if (input != null) {
             File zipBlobFile = input.getFile();
             try (ZipFile zipFile = new ZipFile(zipBlobFile)) {
                 ctx.put(CTX_VAR_COMMENT, zipFile.getComment() == null ? "" : zipFile.getComment());
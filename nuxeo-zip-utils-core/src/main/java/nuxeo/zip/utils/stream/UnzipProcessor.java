@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils.stream;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import nuxeo.zip.utils.ArchiveStore;
+import nuxeo.zip.utils.EntryFilter;
+import nuxeo.zip.utils.TypeMapping;
+import nuxeo.zip.utils.UnzipCheckpoint;
+import nuxeo.zip.utils.UnzipStatus;
+import nuxeo.zip.utils.UnzipToDocuments;
+
+/**
+ * Imports the ranges of entries published by <code>UnzipToDocuments.runDistributed</code>. The computation runs on
+ * every node of the cluster, so a big archive is imported by all of them.
+ *
+ * @since 2025.2
+ */
+public class UnzipProcessor implements StreamProcessorTopology {
+
+    public static final String STREAM_NAME = "zipUtils/unzip";
+
+    public static final String COMPUTATION_NAME = "zipUtils/unzip";
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(() -> new UnzipRangeComputation(COMPUTATION_NAME),
+                               Collections.singletonList("i1:" + STREAM_NAME))
+                       .build();
+    }
+
+    public static class UnzipRangeComputation extends AbstractComputation {
+
+        private static final Log log = LogFactory.getLog(UnzipRangeComputation.class);
+
+        // The range being imported, for processFailure
+        protected UnzipRangeCommand command;
+
+        public UnzipRangeComputation(String name) {
+            super(name, 1, 0);
+        }
+
+        @Override
+        public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+
+            command = UnzipRangeCommand.fromBytes(record.getData());
+            String checkpointKey = getCheckpointKey(command);
+            UnzipToDocuments unzipToDocs = null;
+
+            TransactionHelper.startTransaction();
+            try {
+                CoreSession session = CoreInstance.getCoreSession(command.repository, command.username);
+                DocumentModel parentForImport = session.getDocument(new IdRef(command.parentId));
+
+                Blob archive;
+                if (command.blobKey == null) {
+                    archive = ArchiveStore.get(command.commandId);
+                } else {
+                    BlobInfo blobInfo = new BlobInfo();
+                    blobInfo.key = command.blobKey;
+                    blobInfo.filename = command.blobFilename;
+                    archive = Framework.getService(BlobManager.class)
+                                       .getBlobProvider(command.blobProviderId)
+                                       .readBlob(blobInfo);
+                }
+
+                unzipToDocs = new UnzipToDocuments(parentForImport, archive);
+                unzipToDocs.setCommitModulo(command.commitModulo);
+                unzipToDocs.setCommitMaxBytes(command.commitMaxBytes);
+                unzipToDocs.setCommitMaxSeconds(command.commitMaxSeconds);
+                unzipToDocs.setCommitTimeoutFraction(command.commitTimeoutFraction);
+                unzipToDocs.setLargeEntryThreshold(command.largeEntryThreshold);
+                unzipToDocs.setBatchMode(command.batchMode);
+                unzipToDocs.setBatchFileType(command.batchFileType);
+                unzipToDocs.setDeduplicate(command.deduplicate);
+                if (command.typeMapping != null) {
+                    unzipToDocs.setTypeMapping(new TypeMapping(command.typeMapping));
+                }
+                unzipToDocs.setEntryFilter(
+                        new EntryFilter(command.includes, command.excludes, command.minSize, command.maxSize));
+                unzipToDocs.importRange(command.from, command.to, checkpointKey);
+            } catch (Exception e) {
+                TransactionHelper.setTransactionRollbackOnly();
+                log.warn("Error while importing entries " + command.from + " to " + command.to + " of unzip "
+                        + command.commandId + ", retried according to the policy", e);
+                // The files committed before the error are kept, the retry starts after them
+                throw new NuxeoException("Cannot import the range " + command.from + " of unzip " + command.commandId,
+                        e);
+            } finally {
+                TransactionHelper.commitOrRollbackTransaction();
+                if (unzipToDocs != null && unzipToDocs.getImportSummary() != null) {
+                    UnzipStatus.addEntries(command.commandId, unzipToDocs.getImportSummary().getEntries());
+                }
+            }
+
+            UnzipCheckpoint.remove(checkpointKey);
+            UnzipStatus.rangeDone(command.commandId, false);
+            context.askForCheckpoint();
+        }
+
+        /**
+         * Called when the range still fails after the retries of the policy: it is recorded as an error, and skipped.
+         */
+        @Override
+        public void processFailure(ComputationContext context, Throwable failure) {
+            log.error("Giving up the entries " + command.from + " to " + command.to + " of unzip "
+                    + command.commandId, failure);
+            UnzipCheckpoint.remove(getCheckpointKey(command));
+            UnzipStatus.rangeDone(command.commandId, true);
+        }
+
+        protected static String getCheckpointKey(UnzipRangeCommand command) {
+            return UnzipCheckpoint.getKey(command.commandId, "range-" + command.from);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.zip.utils.stream;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A range of entries of an archive to import, as published in the <code>zipUtils/unzip</code> stream. Serialized as
+ * JSON.
+ * <p>
+ * The archive is read from its blob provider or from the <code>ArchiveStore</code>, so any node of the cluster can
+ * process the range. The folders already
+ * exist (they are created before the ranges are published), the range only contains the files to import, from
+ * <code>from</code> (included) to <code>to</code> (excluded), by position in the files of the <code>ImportPlan</code>
+ * of the archive.
+ *
+ * @since 2025.2
+ */
+public class UnzipRangeCommand {
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public String commandId;
+
+    public String repository;
+
+    public String username;
+
+    // Where the entries are imported: the root document, or the target when mapRoot is true
+    public String parentId;
+
+    // The archive when it is a blob of a provider, else it is in the ArchiveStore (key: the command id)
+    public String blobProviderId;
+
+    public String blobKey;
+
+    public String blobFilename;
+
+    public int from;
+
+    public int to;
+
+    public int commitModulo;
+
+    public long commitMaxBytes;
+
+    public long commitMaxSeconds;
+
+    public double commitTimeoutFraction;
+
+    public long largeEntryThreshold;
+
+    public boolean batchMode;
+
+    public String batchFileType;
+
+    public boolean deduplicate;
+
+    // Rules of the TypeMapping, null if none
+    public Map<String, String> typeMapping;
+
+    // The EntryFilter, all null or 0 if none
+    public List<String> includes;
+
+    public List<String> excludes;
+
+    public long minSize;
+
+    public long maxSize;
+
+    public byte[] toBytes() {
+        try {
+            return MAPPER.writeValueAsBytes(this);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot serialize the unzip command " + commandId, e);
+        }
+    }
+
+    public static UnzipRangeCommand fromBytes(byte[] data) {
+        try {
+            return MAPPER.readValue(data, UnzipRangeCommand.class);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot deserialize an unzip command", e);
+        }
+    }
+
+}
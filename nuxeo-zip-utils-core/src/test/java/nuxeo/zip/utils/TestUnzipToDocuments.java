@@ -1,16 +1,26 @@
 package nuxeo.zip.utils;
 
+import org.apache.commons.compress.archivers.sevenz.SevenZMethod;
+import org.apache.commons.compress.archivers.sevenz.SevenZOutputFile;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.ecm.core.api.*;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.impl.blob.AbstractBlob;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
 import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
 import org.nuxeo.ecm.core.test.annotations.Granularity;
 import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
 import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -18,14 +28,36 @@ import org.nuxeo.runtime.test.runner.TransactionalFeature;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
 import jakarta.inject.Inject;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.fail;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 @RunWith(FeaturesRunner.class)
 @Features(PlatformFeature.class)
@@ -39,6 +71,8 @@ import static org.junit.Assert.assertNotNull;
 @Deploy("nuxeo.zip.utils.nuxeo-zip-utils-core:disable-listeners-contrib.xml")
 public class TestUnzipToDocuments {
 
+    private static final Log log = LogFactory.getLog(TestUnzipToDocuments.class);
+
     // This zip file has files and folders at the root.
     private static final String FILES_AND_FOLDERS_ZIP = "files-and-folders.zip";
     private static final HashMap<String, String> PATHS_AND_DOCTYPES_FILESANDFOLDERS = new HashMap<>();
@@ -53,6 +87,19 @@ public class TestUnzipToDocuments {
         PATHS_AND_DOCTYPES_FILESANDFOLDERS.put("/files-and-folders/f2/Picture.jpg", "Picture");
     }
 
+    // In batch mode, the FileManager is not used for new files
+    private static final HashMap<String, String> PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH = new HashMap<>();
+
+    static {
+        PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH.put("/files-and-folders", "Folder");
+        PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH.put("/files-and-folders/File.pdf", "File");
+        PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH.put("/files-and-folders/f1", "Folder");
+        PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH.put("/files-and-folders/f1/f1-f1", "Folder");
+        PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH.put("/files-and-folders/f1/f1-f1/Video.mp4", "File");
+        PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH.put("/files-and-folders/f2", "Folder");
+        PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH.put("/files-and-folders/f2/Picture.jpg", "File");
+    }
+
     // This zip file has no folders.
     private static final String FILES_ONLY_ZIP = "files-only.zip";
     private static final HashMap<String, String> PATHS_AND_DOCTYPES_FILESONLY = new HashMap<>();
@@ -340,4 +387,1107 @@ public class TestUnzipToDocuments {
 
     }
 
+    @Test
+    /**
+     * This test validates that the parallel import creates the same Documents as the sequential one.
+     */
+    public void shouldUnzipFilesAndFoldersInParallel() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        FileBlob blob = new FileBlob(f);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, blob);
+        unzipToDocs.setParallelism(4);
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+
+    }
+
+    @Test
+    /**
+     * This test validates that, when the archive has a single root folder, the parallel import splits its children and
+     * still maps the root folder the same way as the sequential import.
+     */
+    public void shouldMapRootFolderToRootDocInParallel() {
+
+        File f = FileUtils.getResourceFileFromContext(SINGLE_FOLDER_ZIP);
+
+        FileBlob blob = new FileBlob(f);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, blob);
+        unzipToDocs.setMapRoot(true);
+        unzipToDocs.setParallelism(4);
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+        assertEquals("nuxeo-unzip-test", mainUnzippedFolderDoc.getName());
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_SINGLEFOLDER_MAPPED);
+
+    }
+
+    @Test
+    /**
+     * This test validates that resuming a parallel import is rejected before anything is created
+     */
+    public void shouldRejectResumeInParallel() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setParallelism(4);
+        unzipToDocs.setResume(true);
+        try {
+            unzipToDocs.run();
+            fail("Resume should be rejected in parallel mode");
+        } catch (NuxeoException e) {
+            // Expected
+        }
+        assertFalse(coreSession.exists(new PathRef(testDocsFolder.getPathAsString() + "/files-and-folders")));
+
+    }
+
+    @Test
+    /**
+     * This test validates that the pipelined import creates the same Documents as the sequential one, and reports the
+     * statistics of its stages.
+     */
+    public void shouldUnzipThroughPipeline() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        FileBlob blob = new FileBlob(f);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, blob);
+        unzipToDocs.setPipeline(2, 2);
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+
+        Map<String, Object> stats = unzipToDocs.getImportSummary().getPipeline();
+        assertNotNull(stats);
+        assertEquals(2, stats.get("capacity"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> extract = (Map<String, Object>) stats.get("extract");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> create = (Map<String, Object>) stats.get("create");
+        assertTrue((Long) extract.get("entries") > 0);
+        assertEquals(extract.get("entries"), create.get("entries"));
+        assertTrue((Integer) extract.get("maxQueueDepth") <= 2);
+        assertTrue(unzipToDocs.getImportSummary().toJSON().contains("\"bottleneck\""));
+
+    }
+
+    @Test
+    /**
+     * This test validates that small files read in memory are imported like streamed ones, and logs the throughput and
+     * the memory allocated by both. Run it with -DzipUtils.benchmark.entries=100000 for a meaningful comparison.
+     */
+    public void shouldImportSmallEntriesFromBuffers() throws Exception {
+
+        int count = Integer.getInteger("zipUtils.benchmark.entries", 1000);
+        File zip = Framework.createTempFile("small-entries", ".zip");
+        try {
+            byte[] content = new byte[2048];
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+                for (int i = 0; i < count; i++) {
+                    byte[] id = String.format("%08d", i).getBytes(StandardCharsets.US_ASCII);
+                    for (int j = 0; j < content.length; j++) {
+                        content[j] = id[j % id.length];
+                    }
+                    out.putNextEntry(new ZipEntry("d" + (i % 100) + "/entry-" + i + ".json"));
+                    out.write(content);
+                    out.closeEntry();
+                }
+            }
+
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            for (int threshold : new int[] { 0, 64 * 1024 }) {
+                String name = threshold == 0 ? "streamed" : "buffered";
+                UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(zip));
+                unzipToDocs.setRootFolderishName(name);
+                unzipToDocs.setBatchMode(true);
+                unzipToDocs.setSmallEntryThreshold(threshold);
+
+                long allocated = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                assertNotNull(unzipToDocs.run());
+                long nanos = System.nanoTime() - start;
+                allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+                log.info(String.format("%s: %d entries/s, %d KB allocated per entry", name,
+                        count * 1_000_000_000L / nanos, allocated / count / 1024));
+                assertEquals(threshold == 0 ? 0 : count, unzipToDocs.getImportSummary().getSmallEntries());
+                DocumentModel doc = coreSession.getDocument(
+                        new PathRef(testDocsFolder.getPathAsString() + "/" + name + "/d7/entry-7.json"));
+                Blob blob = (Blob) doc.getPropertyValue("file:content");
+                assertEquals(2048, blob.getLength());
+                assertTrue(blob.getString().startsWith("0000000700000007"));
+            }
+        } finally {
+            zip.delete();
+        }
+    }
+
+    @Test
+    /**
+     * This test validates that an import run as a job reports its completion, and that a job cancelled before it starts
+     * imports nothing.
+     */
+    @Deploy("org.nuxeo.ecm.automation.core")
+    public void shouldRunImportAsJob() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        String jobId = UnzipWork.schedule(testDocsFolder, new FileBlob(f), Map.<String, Serializable> of("commitModulo", 2));
+        assertEquals(UnzipJob.STATE_SCHEDULED, UnzipJob.get(jobId).get("state"));
+        txFeature.nextTransaction();
+
+        Map<String, Serializable> status = UnzipJob.get(jobId);
+        assertEquals(UnzipJob.STATE_COMPLETED, status.get("state"));
+        assertNotNull(status.get("rootDocumentId"));
+        assertEquals(status.get("totalEntries"), status.get("entries"));
+        assertNotNull(status.get("summary"));
+        assertFalse(UnzipJob.cancel(jobId));
+        assertFalse(ArchiveStore.getStore().exists(jobId));
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+
+        FileBlob blob = new FileBlob(f);
+        jobId = UnzipWork.schedule(testDocsFolder, blob, Map.<String, Serializable> of("mainFolderishName", "cancelled"));
+        assertEquals(coreSession.getPrincipal().getName(), UnzipJob.get(jobId).get("username"));
+        assertFalse(UnzipJob.canCancel(jobId, new UserPrincipal("someoneElse", List.of(), false, false)));
+        assertTrue(UnzipJob.canCancel(jobId, new UserPrincipal("someAdmin", List.of(), false, true)));
+        assertTrue(UnzipJob.canCancel(jobId, coreSession.getPrincipal()));
+        assertTrue(UnzipJob.cancel(jobId));
+        txFeature.nextTransaction();
+
+        assertEquals(UnzipJob.STATE_CANCELLED, UnzipJob.get(jobId).get("state"));
+        assertFalse(ArchiveStore.getStore().exists(jobId));
+        assertFalse(coreSession.exists(new PathRef(testDocsFolder.getPathAsString() + "/cancelled")));
+
+    }
+
+    @Test
+    /**
+     * This test validates that only the files selected by the filter are imported, without creating the folders which
+     * contain none of them.
+     */
+    public void shouldImportOnlySelectedFiles() {
+
+        EntryFilter tifs = new EntryFilter(List.of("images/**/*.tif"), null, 0, 0);
+        assertTrue(tifs.accepts("images/a.tif", 10));
+        assertTrue(tifs.accepts("images/2024/05/b.tif", 10));
+        assertFalse(tifs.accepts("other/images/a.tif", 10));
+        assertFalse(tifs.accepts("images/a.tiff", 10));
+        EntryFilter small = new EntryFilter(null, List.of("*.tmp"), 0, 100);
+        assertTrue(small.accepts("a/b.txt", -1));
+        assertFalse(small.accepts("a/b.txt", 101));
+        assertFalse(small.accepts("a/b.tmp", 10));
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+        String rootPath = testDocsFolder.getPathAsString() + "/files-and-folders";
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setEntryFilter(EntryFilter.parse("*.jpg, *.mp4", "f1/**", 0, 0));
+        assertNotNull(unzipToDocs.run());
+
+        assertTrue(coreSession.exists(new PathRef(rootPath + "/f2/Picture.jpg")));
+        assertFalse(coreSession.exists(new PathRef(rootPath + "/File.pdf")));
+        assertFalse(coreSession.exists(new PathRef(rootPath + "/f1")));
+        assertEquals(2, unzipToDocs.getImportSummary().getEntries());
+
+    }
+
+    @Test
+    /**
+     * This test validates that the entries streamed to the blob provider are stored complete, with a digest.
+     */
+    public void shouldStreamEntriesToBlobProvider() throws Exception {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        FileBlob blob = new FileBlob(f);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, blob);
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        try (ZipFile zipFile = new ZipFile(f)) {
+            ZipEntry entry = zipFile.getEntry("File.pdf");
+            DocumentModel doc = coreSession.getDocument(
+                    new PathRef(testDocsFolder.getPathAsString() + "/files-and-folders/File.pdf"));
+            Blob imported = (Blob) doc.getPropertyValue("file:content");
+            assertNotNull(imported);
+            assertEquals(entry.getSize(), imported.getLength());
+            assertEquals("application/pdf", imported.getMimeType());
+            assertNotNull(imported.getDigest());
+            try (InputStream expected = zipFile.getInputStream(entry); InputStream actual = imported.getStream()) {
+                assertTrue(IOUtils.contentEquals(expected, actual));
+            }
+        }
+
+    }
+
+    @Test
+    /**
+     * This test validates that, in batch mode, the files are cached with the name given by the repository when they
+     * are created, even when it is not the one they were built with (same truncated path segment)
+     */
+    public void shouldCacheCreatedNamesInBatchMode() throws Exception {
+
+        File zip = Framework.createTempFile("batch-names", ".zip");
+        try {
+            writeZip(zip, "docs/a-file-name-longer-than-a-path-segment-1.txt",
+                    "docs/a-file-name-longer-than-a-path-segment-2.txt");
+
+            UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(zip));
+            unzipToDocs.setRootFolderishName("batch-names");
+            unzipToDocs.setBatchMode(true);
+            DocumentModel root = unzipToDocs.run();
+
+            DocumentModel docs = coreSession.getChild(root.getRef(), "docs");
+            List<DocumentModel> children = coreSession.getChildren(docs.getRef());
+            assertEquals(2, children.size());
+            for (DocumentModel child : children) {
+                assertEquals(child.getRef(), unzipToDocs.folderCache.getChild(coreSession, docs.getRef(),
+                        child.getName()));
+            }
+        } finally {
+            zip.delete();
+        }
+
+    }
+
+    @Test
+    /**
+     * This test validates that importing twice in the same folders reuses the existing folders and overwrites the
+     * existing files instead of creating duplicates.
+     */
+    public void shouldReuseExistingDocumentsWhenImportingTwice() {
+
+        File f = FileUtils.getResourceFileFromContext(SINGLE_FOLDER_ZIP);
+
+        for (int i = 0; i < 2; i++) {
+            UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+            unzipToDocs.setMapRoot(true);
+            DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+            assertNotNull(mainUnzippedFolderDoc);
+        }
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_SINGLEFOLDER_MAPPED);
+
+        String rootPath = testDocsFolder.getPathAsString();
+        assertEquals(1, coreSession.getChildren(testDocsFolder.getRef()).size());
+        assertEquals(3, coreSession.getChildren(new PathRef(rootPath + "/nuxeo-unzip-test")).size());
+        assertEquals(1, coreSession.getChildren(new PathRef(rootPath + "/nuxeo-unzip-test/f2")).size());
+
+    }
+
+    @Test
+    /**
+     * This test validates that the batch mode creates the same tree, with titles and blobs set, including when the
+     * batch is flushed several times.
+     */
+    public void shouldUnzipFilesAndFoldersInBatch() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        FileBlob blob = new FileBlob(f);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, blob);
+        unzipToDocs.setBatchMode(true);
+        unzipToDocs.setCommitModulo(2);
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH);
+
+        String rootPath = testDocsFolder.getPathAsString() + "/files-and-folders";
+        assertEquals("f1-f1", coreSession.getDocument(new PathRef(rootPath + "/f1/f1-f1")).getTitle());
+        DocumentModel picture = coreSession.getDocument(new PathRef(rootPath + "/f2/Picture.jpg"));
+        assertEquals("Picture.jpg", picture.getTitle());
+        Blob pictureBlob = (Blob) picture.getPropertyValue("file:content");
+        assertNotNull(pictureBlob);
+        assertEquals(15376, pictureBlob.getLength());
+
+    }
+
+    @Test
+    /**
+     * This test validates that the transaction is committed when the extracted bytes reach the threshold, and that the
+     * summary tells which policy triggered each commit.
+     */
+    public void shouldCommitOnExtractedBytes() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        // File.pdf (33088) + Video.mp4 (194684) are above the threshold
+        unzipToDocs.setCommitMaxBytes(100_000);
+        unzipToDocs.setCommitTimeoutFraction(0);
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+
+        ImportSummary summary = unzipToDocs.getImportSummary();
+        List<ImportSummary.Commit> commits = summary.getCommits();
+        assertEquals(3, commits.size());
+        assertEquals(CommitPolicy.Trigger.FOLDERS, commits.get(0).trigger);
+        assertEquals(3, commits.get(0).entries);
+        assertEquals(CommitPolicy.Trigger.BYTES, commits.get(1).trigger);
+        assertEquals(2, commits.get(1).entries);
+        assertEquals(33088 + 194684, commits.get(1).bytes);
+        assertEquals(CommitPolicy.Trigger.END, commits.get(2).trigger);
+        assertEquals(6, summary.getEntries());
+        assertEquals(243148, summary.getBytes());
+
+    }
+
+    @Test
+    /**
+     * This test validates that a large entry is extracted between two transactions and still imported with the
+     * FileManager.
+     */
+    public void shouldExtractLargeEntryOutsideTransaction() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        // Only Video.mp4 (194684)
+        unzipToDocs.setLargeEntryThreshold(100_000);
+        unzipToDocs.setCommitTimeoutFraction(0);
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+
+        String rootPath = testDocsFolder.getPathAsString() + "/files-and-folders";
+        Blob video = (Blob) coreSession.getDocument(new PathRef(rootPath + "/f1/f1-f1/Video.mp4"))
+                                       .getPropertyValue("file:content");
+        assertEquals(194684, video.getLength());
+        assertEquals("Video.mp4", video.getFilename());
+
+        ImportSummary summary = unzipToDocs.getImportSummary();
+        assertEquals(1, summary.getLargeEntries());
+        List<ImportSummary.Commit> commits = summary.getCommits();
+        assertEquals(3, commits.size());
+        assertEquals(CommitPolicy.Trigger.FOLDERS, commits.get(0).trigger);
+        // File.pdf only
+        assertEquals(CommitPolicy.Trigger.LARGE_ENTRY, commits.get(1).trigger);
+        assertEquals(1, commits.get(1).entries);
+        assertEquals(CommitPolicy.Trigger.END, commits.get(2).trigger);
+        assertTrue(summary.toJSON().contains("\"LARGE_ENTRY\":1"));
+
+    }
+
+    @Test
+    /**
+     * This test validates that the plan lists all the folders, parents first, even without directory entries, and
+     * groups the files by folder.
+     */
+    public void shouldPlanFoldersThenFilesByFolder() {
+
+        List<ZipEntry> entries = Arrays.asList(new ZipEntry("a/b/File1.pdf"), new ZipEntry("c/File2.pdf"),
+                new ZipEntry("a/File3.pdf"), new ZipEntry("a/b/File4.pdf"), new ZipEntry("File5.pdf"),
+                new ZipEntry("c/d/"), new ZipEntry("__MACOSX/a/File1.pdf"));
+
+        ImportPlan plan = ImportPlan.of(entries, name -> name.startsWith("__MACOSX/"));
+
+        assertEquals(Arrays.asList("a", "a/b", "c", "c/d"), plan.getFolders());
+        List<String> files = new ArrayList<>();
+        plan.getFiles().forEach(entry -> files.add(entry.getName()));
+        assertEquals(Arrays.asList("a/b/File1.pdf", "a/b/File4.pdf", "c/File2.pdf", "a/File3.pdf", "File5.pdf"), files);
+
+    }
+
+    @Test
+    /**
+     * This test validates that importing the same content again references the stored binaries instead of uploading
+     * them, found through the CRC recorded on the documents imported with deduplication only.
+     */
+    public void shouldDeduplicateBinaries() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+        String parentPath = testDocsFolder.getPathAsString();
+
+        // Not imported with deduplication: no candidate
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.run();
+        unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setRootFolderishName("copy0");
+        unzipToDocs.setDeduplicate(true);
+        unzipToDocs.run();
+        assertEquals(0, unzipToDocs.getImportSummary().getDeduplicatedEntries());
+
+        // Found through the CRC of the documents of copy0
+        unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setRootFolderishName("copy1");
+        unzipToDocs.setDeduplicate(true);
+        unzipToDocs.run();
+        assertEquals(3, unzipToDocs.getImportSummary().getDeduplicatedEntries());
+        assertEquals(243148, unzipToDocs.getImportSummary().getDeduplicatedBytes());
+
+        DocumentModel video = coreSession.getDocument(new PathRef(parentPath + "/copy1/f1/f1-f1/Video.mp4"));
+        assertTrue(video.hasFacet(BlobDeduplicator.ZIP_ENTRY_FACET));
+        assertEquals(194684L, video.getPropertyValue(BlobDeduplicator.XPATH_SIZE));
+
+        // Same in batch mode
+        unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setRootFolderishName("copy2");
+        unzipToDocs.setDeduplicate(true);
+        unzipToDocs.setBatchMode(true);
+        unzipToDocs.run();
+        assertEquals(3, unzipToDocs.getImportSummary().getDeduplicatedEntries());
+
+        ManagedBlob original = (ManagedBlob) coreSession.getDocument(
+                new PathRef(parentPath + "/copy0/f2/Picture.jpg")).getPropertyValue("file:content");
+        ManagedBlob copy = (ManagedBlob) coreSession.getDocument(new PathRef(parentPath + "/copy2/f2/Picture.jpg"))
+                                                    .getPropertyValue("file:content");
+        assertEquals(original.getKey(), copy.getKey());
+        assertEquals("Picture.jpg", copy.getFilename());
+        assertEquals(15376, copy.getLength());
+
+    }
+
+    @Test
+    /**
+     * This test validates that a new version of an archive imported in sync mode only updates the changed files, and
+     * trashes the removed ones
+     */
+    public void shouldSyncChangedEntries() throws Exception {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+        String rootPath = testDocsFolder.getPathAsString() + "/files-and-folders";
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setSync(true);
+        DocumentModel root = unzipToDocs.run();
+        assertEquals(0, unzipToDocs.getImportSummary().getUnchangedEntries());
+
+        // Same archive: nothing to do, in the same root
+        unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setSync(true);
+        assertEquals(root.getId(), unzipToDocs.run().getId());
+        assertEquals(3, unzipToDocs.getImportSummary().getUnchangedEntries());
+        assertEquals(0, unzipToDocs.getImportSummary().getBytes());
+
+        // New version: File.pdf changed, f2/Picture.jpg removed
+        File newVersion = Framework.createTempFile("files-and-folders", ".zip");
+        try {
+            byte[] newPdf = "Not the same content".getBytes(StandardCharsets.UTF_8);
+            try (ZipFile zipFile = new ZipFile(f);
+                    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(newVersion))) {
+                for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                    if (entry.getName().equals("f2/Picture.jpg")) {
+                        continue;
+                    }
+                    out.putNextEntry(new ZipEntry(entry.getName()));
+                    if (entry.getName().equals("File.pdf")) {
+                        out.write(newPdf);
+                    } else {
+                        try (InputStream in = zipFile.getInputStream(entry)) {
+                            IOUtils.copy(in, out);
+                        }
+                    }
+                    out.closeEntry();
+                }
+            }
+            FileBlob newBlob = new FileBlob(newVersion);
+            newBlob.setFilename(FILES_AND_FOLDERS_ZIP);
+
+            unzipToDocs = new UnzipToDocuments(testDocsFolder, newBlob);
+            unzipToDocs.setSync(true);
+            unzipToDocs.setSyncTrashRemoved(true);
+            unzipToDocs.run();
+
+            ImportSummary summary = unzipToDocs.getImportSummary();
+            assertEquals(1, summary.getUnchangedEntries());
+            assertEquals(newPdf.length, summary.getBytes());
+            assertEquals(1, summary.getTrashedEntries());
+
+            DocumentModel pdf = coreSession.getDocument(new PathRef(rootPath + "/File.pdf"));
+            assertEquals(newPdf.length, ((Blob) pdf.getPropertyValue("file:content")).getLength());
+            assertEquals((long) newPdf.length, pdf.getPropertyValue(BlobDeduplicator.XPATH_SIZE));
+            assertTrue(coreSession.getDocument(new PathRef(rootPath + "/f2/Picture.jpg")).isTrashed());
+            assertFalse(coreSession.getDocument(new PathRef(rootPath + "/f1/f1-f1/Video.mp4")).isTrashed());
+        } finally {
+            newVersion.delete();
+        }
+
+    }
+
+    @Test
+    /**
+     * This test validates that the syncs of two archives mapped to the same target only see their own documents
+     */
+    public void shouldSyncArchivesMappedToTheSameTarget() throws Exception {
+
+        File first = Framework.createTempFile("first", ".zip");
+        File second = Framework.createTempFile("second", ".zip");
+        try {
+            writeZip(first, "common/first.txt", "common/same.txt");
+            writeZip(second, "common/second.txt");
+
+            for (File zip : new File[] { first, second }) {
+                FileBlob blob = new FileBlob(zip);
+                blob.setFilename(zip == first ? "first.zip" : "second.zip");
+                UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, blob);
+                unzipToDocs.setMapRoot(true);
+                unzipToDocs.setSync(true);
+                unzipToDocs.setSyncTrashRemoved(true);
+                unzipToDocs.run();
+                // The documents of the other archive are neither compared nor seen as removed
+                assertEquals(0, unzipToDocs.getImportSummary().getUnchangedEntries());
+                assertEquals(0, unzipToDocs.getImportSummary().getTrashedEntries());
+            }
+
+            // New version of the first one, without same.txt
+            writeZip(first, "common/first.txt");
+            FileBlob blob = new FileBlob(first);
+            blob.setFilename("first.zip");
+            UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, blob);
+            unzipToDocs.setMapRoot(true);
+            unzipToDocs.setSync(true);
+            unzipToDocs.setSyncTrashRemoved(true);
+            unzipToDocs.run();
+            assertEquals(1, unzipToDocs.getImportSummary().getUnchangedEntries());
+            assertEquals(1, unzipToDocs.getImportSummary().getTrashedEntries());
+
+            String commonPath = testDocsFolder.getPathAsString() + "/common";
+            assertTrue(coreSession.getDocument(new PathRef(commonPath + "/same.txt")).isTrashed());
+            assertFalse(coreSession.getDocument(new PathRef(commonPath + "/first.txt")).isTrashed());
+            DocumentModel other = coreSession.getDocument(new PathRef(commonPath + "/second.txt"));
+            assertFalse(other.isTrashed());
+            assertEquals("second", other.getPropertyValue(ArchiveSync.XPATH_ARCHIVE));
+            assertEquals("common/second.txt", other.getPropertyValue(ArchiveSync.XPATH_PATH));
+        } finally {
+            first.delete();
+            second.delete();
+        }
+
+    }
+
+    private void writeZip(File zip, String... paths) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (String path : paths) {
+                out.putNextEntry(new ZipEntry(path));
+                out.write(path.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Test
+    /**
+     * This test validates that, in bulk mode, only the imported documents skip the listeners disabled by the flags,
+     * and that only the registered post-processing actions are run.
+     */
+    public void shouldFlagImportedDocumentsInBulkMode() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setBulkImportMode(
+                new BulkImportMode(Collections.singletonList(BulkImportMode.DISABLE_DUBLINCORE_LISTENER),
+                        Arrays.asList("setProperties", "notRegisteredAction")));
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+
+        // The DublinCore listener did not run, the import set the creation metadata
+        String rootPath = testDocsFolder.getPathAsString() + "/files-and-folders";
+        DocumentModel picture = coreSession.getDocument(new PathRef(rootPath + "/f2/Picture.jpg"));
+        assertNotNull(picture.getPropertyValue("dc:created"));
+        assertEquals(coreSession.getPrincipal().getName(), picture.getPropertyValue("dc:creator"));
+        assertEquals(0, ((Object[]) picture.getPropertyValue("dc:contributors")).length);
+
+        // Not for the other documents
+        DocumentModel other = coreSession.createDocument(
+                coreSession.createDocumentModel(testDocsFolder.getPathAsString(), "other", "File"));
+        assertEquals(1, ((Object[]) other.getPropertyValue("dc:contributors")).length);
+
+        // One command for the whole import, scoped to its documents
+        Map<String, String> postProcessing = unzipToDocs.getImportSummary().getPostProcessing();
+        assertEquals(1, postProcessing.size());
+        assertNotNull(postProcessing.get("setProperties"));
+
+        txFeature.nextTransaction();
+
+    }
+
+    @Test
+    /**
+     * This test validates that the files matching the type mapping, by extension or mime type, are created with the
+     * mapped type, and that the other ones are still imported by the FileManager.
+     */
+    public void shouldUnzipWithTypeMapping() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        Map<String, String> rules = new HashMap<>();
+        rules.put("MP4", "File");
+        rules.put("image/*", "File:file:content");
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setTypeMapping(new TypeMapping(rules));
+
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        // Same as batch mode: no FileManager, so no Video or Picture
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS_BATCH);
+
+        String rootPath = testDocsFolder.getPathAsString() + "/files-and-folders";
+        DocumentModel picture = coreSession.getDocument(new PathRef(rootPath + "/f2/Picture.jpg"));
+        assertEquals("Picture.jpg", picture.getTitle());
+        Blob pictureBlob = (Blob) picture.getPropertyValue("file:content");
+        assertEquals("image/jpeg", pictureBlob.getMimeType());
+        assertEquals(15376, pictureBlob.getLength());
+
+    }
+
+    @Test
+    /**
+     * This test validates that a zip is imported in streaming mode without reading it from a local file
+     */
+    public void shouldUnzipFromStream() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        // As a blob of a remote provider, which would have to be downloaded to get its file
+        @SuppressWarnings("serial")
+        Blob remoteBlob = new AbstractBlob() {
+
+            @Override
+            public InputStream getStream() throws IOException {
+                return new FileInputStream(f);
+            }
+
+            @Override
+            public File getFile() {
+                throw new UnsupportedOperationException("Not a local blob");
+            }
+        };
+        remoteBlob.setFilename(FILES_AND_FOLDERS_ZIP);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, remoteBlob);
+        unzipToDocs.setStreaming(true);
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+        assertEquals(243148, unzipToDocs.getImportSummary().getBytes());
+
+    }
+
+    @Test
+    /**
+     * This test validates that a compressed tar archive is imported in a single streaming pass, in a root named
+     * after the archive without its .tar.gz extensions
+     */
+    public void shouldUnzipCompressedTar() {
+
+        File f = FileUtils.getResourceFileFromContext("TestArchives/bla.tgz");
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+        assertEquals("bla", mainUnzippedFolderDoc.getName());
+
+        String rootPath = mainUnzippedFolderDoc.getPathAsString();
+        DocumentModel test1 = coreSession.getDocument(new PathRef(rootPath + "/test1.xml"));
+        // File or Note, depending on the FileManager plugins
+        assertEquals(496, test1.getAdapter(BlobHolder.class).getBlob().getLength());
+        assertTrue(coreSession.exists(new PathRef(rootPath + "/test2.xml")));
+        // The ._ entries are ignored
+        assertEquals(2, coreSession.getChildren(mainUnzippedFolderDoc.getRef()).size());
+
+        assertEquals(2, unzipToDocs.getImportSummary().getEntries());
+
+    }
+
+    @Test
+    /**
+     * This test validates that a 7z archive held in memory, with no file, is read from a temporary copy
+     */
+    public void shouldUnzip7zBlobWithoutFile() throws Exception {
+
+        File xml = FileUtils.getResourceFileFromContext("test1.xml");
+        File sevenZ = Framework.createTempFile("test1", ".7z");
+        try {
+            try (SevenZOutputFile out = new SevenZOutputFile(sevenZ)) {
+                // Not compressed, LZMA needs the xz library
+                out.setContentCompression(SevenZMethod.COPY);
+                out.putArchiveEntry(out.createArchiveEntry(xml, "test1.xml"));
+                out.write(Files.readAllBytes(xml.toPath()));
+                out.closeArchiveEntry();
+            }
+            Blob blob = Blobs.createBlob(Files.readAllBytes(sevenZ.toPath()));
+            blob.setFilename("test1.7z");
+            assertNull(blob.getFile());
+
+            DocumentModel mainUnzippedFolderDoc = new UnzipToDocuments(testDocsFolder, blob).run();
+            assertNotNull(mainUnzippedFolderDoc);
+            DocumentModel test1 = coreSession.getDocument(
+                    new PathRef(mainUnzippedFolderDoc.getPathAsString() + "/test1.xml"));
+            assertEquals(xml.length(), test1.getAdapter(BlobHolder.class).getBlob().getLength());
+        } finally {
+            sevenZ.delete();
+        }
+
+    }
+
+    @Test
+    /**
+     * This test validates that a single compressed file is imported as one Document, directly in the target
+     */
+    public void shouldUnzipSingleCompressedFile() throws Exception {
+
+        File xml = FileUtils.getResourceFileFromContext("test1.xml");
+        File gz = Framework.createTempFile("test1.xml", ".gz");
+        try {
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+                Files.copy(xml.toPath(), out);
+            }
+            FileBlob gzBlob = new FileBlob(gz);
+            gzBlob.setFilename("test1.xml.gz");
+
+            DocumentModel doc = new UnzipToDocuments(testDocsFolder, gzBlob).run();
+            assertNotNull(doc);
+            assertEquals(testDocsFolder.getPathAsString() + "/test1.xml", doc.getPathAsString());
+            assertEquals("test1.xml", doc.getTitle());
+            assertEquals(xml.length(), doc.getAdapter(BlobHolder.class).getBlob().getLength());
+        } finally {
+            gz.delete();
+        }
+
+    }
+
+    @Test
+    /**
+     * This test validates the preflight of an import, computed from the central directory only
+     */
+    public void shouldComputePreflight() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        UnzipPreflight preflight = new UnzipToDocuments(testDocsFolder, new FileBlob(f)).preflight(2);
+        assertEquals(3, preflight.getFolders());
+        assertEquals(3, preflight.getFiles());
+        assertEquals(243148, preflight.getBytes());
+        assertEquals(3, preflight.getMaxDepth());
+        assertEquals(2, preflight.getLargest().size());
+        assertEquals("f1/f1-f1/Video.mp4", preflight.getLargest().get(0).getName());
+        assertTrue(preflight.getCollisions().isEmpty());
+        // Nothing created
+        assertFalse(coreSession.exists(new PathRef(testDocsFolder.getPathAsString() + "/files-and-folders")));
+
+        try {
+            preflight.checkLimits(100000, 0, 0);
+            fail("The archive extracts more than 100000 bytes");
+        } catch (NuxeoException e) {
+            // Expected
+        }
+        preflight.checkLimits(0, 3, 200000);
+
+        // The import measures its throughput
+        new UnzipToDocuments(testDocsFolder, new FileBlob(f)).run();
+        preflight = new UnzipToDocuments(testDocsFolder, new FileBlob(f)).preflight(2);
+        assertEquals(Collections.singleton("files-and-folders"), preflight.getCollisions());
+        assertNotNull(preflight.getEstimatedSeconds());
+
+    }
+
+    @Test
+    /**
+     * This test validates that the archives found in the archive are expanded in a folder named after them, and that
+     * the import fails when they extract too many bytes
+     */
+    public void shouldExpandNestedArchives() throws Exception {
+
+        File tgz = FileUtils.getResourceFileFromContext("TestArchives/bla.tgz");
+        File xml = FileUtils.getResourceFileFromContext("test1.xml");
+        File zip = Framework.createTempFile("nested", ".zip");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+                out.putNextEntry(new ZipEntry("test1.xml"));
+                Files.copy(xml.toPath(), out);
+                out.closeEntry();
+                out.putNextEntry(new ZipEntry("docs/bla.tgz"));
+                Files.copy(tgz.toPath(), out);
+                out.closeEntry();
+            }
+
+            UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(zip));
+            unzipToDocs.setRootFolderishName("nested");
+            unzipToDocs.setNestedArchiveLimits(new NestedArchiveLimits());
+            DocumentModel root = unzipToDocs.run();
+
+            String rootPath = root.getPathAsString();
+            assertTrue(coreSession.exists(new PathRef(rootPath + "/test1.xml")));
+            assertTrue(coreSession.exists(new PathRef(rootPath + "/docs/bla/test1.xml")));
+            assertTrue(coreSession.exists(new PathRef(rootPath + "/docs/bla/test2.xml")));
+            assertFalse(coreSession.exists(new PathRef(rootPath + "/docs/bla.tgz")));
+            assertEquals(1, unzipToDocs.getImportSummary().getNestedArchives());
+
+            // test1.xml alone is more than 100 bytes
+            unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(zip));
+            unzipToDocs.setRootFolderishName("bomb");
+            unzipToDocs.setNestedArchiveLimits(new NestedArchiveLimits(1, 100, 0));
+            try {
+                unzipToDocs.run();
+                fail("The nested archive should exceed the limit");
+            } catch (NuxeoException e) {
+                // Expected
+            }
+        } finally {
+            zip.delete();
+        }
+
+    }
+
+    @Test
+    /**
+     * This test validates that the bytes of the entries of a nested archive which are skipped count against the limits
+     */
+    public void shouldCountSkippedEntriesOfNestedArchives() throws Exception {
+
+        ByteArrayOutputStream inner = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(inner)) {
+            // Ignored by the import, but inflated to reach the next entry
+            out.putNextEntry(new ZipEntry("__MACOSX/big.bin"));
+            out.write(new byte[1024 * 1024]);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("small.txt"));
+            out.write("small".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        File zip = Framework.createTempFile("nested-skipped", ".zip");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+                out.putNextEntry(new ZipEntry("inner.zip"));
+                out.write(inner.toByteArray());
+                out.closeEntry();
+            }
+
+            UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(zip));
+            unzipToDocs.setRootFolderishName("skipped");
+            unzipToDocs.setNestedArchiveLimits(new NestedArchiveLimits(1, 0, 0));
+            DocumentModel root = unzipToDocs.run();
+            assertTrue(coreSession.exists(new PathRef(root.getPathAsString() + "/inner/small.txt")));
+            assertFalse(coreSession.exists(new PathRef(root.getPathAsString() + "/inner/__MACOSX")));
+
+            unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(zip));
+            unzipToDocs.setRootFolderishName("skipped-bomb");
+            unzipToDocs.setNestedArchiveLimits(new NestedArchiveLimits(1, 100 * 1024, 0));
+            try {
+                unzipToDocs.run();
+                fail("The skipped entry should exceed the limit");
+            } catch (NuxeoException e) {
+                // Expected
+            }
+        } finally {
+            zip.delete();
+        }
+
+    }
+
+    @Test
+    /**
+     * This test validates that the format of the archive is decided from its mime type or name when they tell it, and
+     * from its first bytes only otherwise
+     */
+    public void shouldDetectZipFromMimeTypeOrName() throws Exception {
+
+        Blob unreadable = new AbstractBlob() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public InputStream getStream() throws IOException {
+                throw new IOException("Should not be read");
+            }
+        };
+        unreadable.setFilename("archive.bin");
+        unreadable.setMimeType("application/zip");
+        assertTrue(StreamingArchive.isZip(unreadable));
+        unreadable.setMimeType("application/octet-stream");
+        unreadable.setFilename("archive.ZIP");
+        assertTrue(StreamingArchive.isZip(unreadable));
+        unreadable.setFilename("archive.tar.gz");
+        assertFalse(StreamingArchive.isZip(unreadable));
+
+        // Nothing tells: sniffed
+        FileBlob blob = new FileBlob(FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP));
+        blob.setFilename("archive");
+        blob.setMimeType("application/octet-stream");
+        assertTrue(StreamingArchive.isZip(blob));
+
+    }
+
+    @Test
+    /**
+     * This test validates that an import killed in the middle can be resumed from its last checkpoint, without
+     * duplicating the Documents created before the failure.
+     */
+    public void shouldResumeFailedImport() {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        // Fails on the last file (f2/Picture.jpg), after the commit of the first 2 files
+        UnzipToDocuments failingUnzip = new UnzipToDocuments(testDocsFolder, new FileBlob(f)) {
+            @Override
+            protected Blob createEntryBlob(ZipFile zipFile, ZipEntry entry) {
+                if (entry.getName().endsWith("Picture.jpg")) {
+                    throw new NuxeoException("Simulated crash");
+                }
+                return super.createEntryBlob(zipFile, entry);
+            }
+        };
+        failingUnzip.setCommitModulo(2);
+        try {
+            failingUnzip.run();
+            fail("The import should have failed", false);
+        } catch (NuxeoException e) {
+            assertEquals("Simulated crash", e.getMessage());
+        }
+
+        String rootPath = testDocsFolder.getPathAsString() + "/files-and-folders";
+        assertTrue(coreSession.exists(new PathRef(rootPath + "/f1/f1-f1/Video.mp4")));
+        // Folders are all created first
+        assertTrue(coreSession.exists(new PathRef(rootPath + "/f2")));
+        // Was after the last checkpoint
+        assertFalse(coreSession.exists(new PathRef(rootPath + "/f2/Picture.jpg")));
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        unzipToDocs.setCommitModulo(2);
+        unzipToDocs.setResume(true);
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+        assertEquals(rootPath, mainUnzippedFolderDoc.getPathAsString());
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+
+        // Nothing duplicated
+        assertEquals(1, coreSession.getChildren(testDocsFolder.getRef()).size());
+        assertEquals(3, coreSession.getChildren(new PathRef(rootPath)).size());
+        assertEquals(1, coreSession.getChildren(new PathRef(rootPath + "/f1")).size());
+        assertEquals(1, coreSession.getChildren(new PathRef(rootPath + "/f1/f1-f1")).size());
+        assertEquals(1, coreSession.getChildren(new PathRef(rootPath + "/f2")).size());
+
+    }
+
+    @Test
+    /**
+     * This test validates that resuming an import which failed after a nested archive does not expand it again
+     */
+    public void shouldResumeAfterNestedArchive() throws Exception {
+
+        File tgz = FileUtils.getResourceFileFromContext("TestArchives/bla.tgz");
+        File zip = Framework.createTempFile("nested-resume", ".zip");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+                out.putNextEntry(new ZipEntry("docs/bla.tgz"));
+                Files.copy(tgz.toPath(), out);
+                out.closeEntry();
+                out.putNextEntry(new ZipEntry("docs/last.txt"));
+                out.write("last".getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+
+            // Fails on the entry after the nested archive
+            UnzipToDocuments failingUnzip = new UnzipToDocuments(testDocsFolder, new FileBlob(zip)) {
+                @Override
+                protected Blob createEntryBlob(ZipFile zipFile, ZipEntry entry) {
+                    if (entry.getName().endsWith("last.txt")) {
+                        throw new NuxeoException("Simulated crash");
+                    }
+                    return super.createEntryBlob(zipFile, entry);
+                }
+            };
+            failingUnzip.setRootFolderishName("nested-resume");
+            failingUnzip.setNestedArchiveLimits(new NestedArchiveLimits());
+            try {
+                failingUnzip.run();
+                fail("The import should have failed", false);
+            } catch (NuxeoException e) {
+                assertEquals("Simulated crash", e.getMessage());
+            }
+            assertEquals(Integer.valueOf(1),
+                    failingUnzip.getImportSummary().getCommitsByTrigger().get(CommitPolicy.Trigger.NESTED_ARCHIVE));
+
+            String rootPath = testDocsFolder.getPathAsString() + "/nested-resume";
+            assertTrue(coreSession.exists(new PathRef(rootPath + "/docs/bla/test1.xml")));
+            assertFalse(coreSession.exists(new PathRef(rootPath + "/docs/last.txt")));
+
+            UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(zip));
+            unzipToDocs.setRootFolderishName("nested-resume");
+            unzipToDocs.setNestedArchiveLimits(new NestedArchiveLimits());
+            unzipToDocs.setResume(true);
+            unzipToDocs.run();
+
+            assertEquals(0, unzipToDocs.getImportSummary().getNestedArchives());
+            assertTrue(coreSession.exists(new PathRef(rootPath + "/docs/last.txt")));
+            // Not expanded again
+            assertEquals(2, coreSession.getChildren(new PathRef(rootPath + "/docs/bla")).size());
+            assertEquals(2, coreSession.getChildren(new PathRef(rootPath + "/docs")).size());
+        } finally {
+            zip.delete();
+        }
+
+    }
+
+    @Test
+    /**
+     * This test validates that a distributed import, one stream record per range of 2 entries, creates the same
+     * Documents as a sequential import, and that its status is available.
+     */
+    public void shouldUnzipFilesAndFoldersDistributed() throws Exception {
+
+        File f = FileUtils.getResourceFileFromContext(FILES_AND_FOLDERS_ZIP);
+
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        String commandId = unzipToDocs.runDistributed(2);
+        assertNotNull(commandId);
+        assertNotNull(unzipToDocs.getRootDocument());
+        assertEquals("files-and-folders", unzipToDocs.getRootDocument().getTitle());
+        // The folders were committed by the calling thread
+        ImportSummary summary = unzipToDocs.getImportSummary();
+        assertNotNull(summary);
+        assertEquals(Integer.valueOf(1), summary.getCommitsByTrigger().get(CommitPolicy.Trigger.FOLDERS));
+
+        long timeout = System.currentTimeMillis() + 30_000;
+        while (!UnzipStatus.isCompleted(commandId)) {
+            if (System.currentTimeMillis() > timeout) {
+                fail("Distributed import did not complete: " + UnzipStatus.get(commandId), false);
+            }
+            Thread.sleep(100);
+        }
+        txFeature.nextTransaction();
+
+        checkUnzippedContent(PATHS_AND_DOCTYPES_FILESANDFOLDERS);
+
+        Map<String, Serializable> status = UnzipStatus.get(commandId);
+        assertEquals(UnzipStatus.STATE_COMPLETED, status.get("state"));
+        assertEquals(0L, status.get("errors"));
+        assertEquals(status.get("totalRanges"), status.get("completedRanges"));
+        assertEquals(status.get("totalEntries"), status.get("processedEntries"));
+        assertEquals(unzipToDocs.getRootDocument().getId(), status.get("rootDocumentId"));
+        // The copy of the archive is removed once all the ranges are done
+        assertFalse(ArchiveStore.getStore().exists(commandId));
+
+    }
+
 }
@@ -1,15 +1,30 @@
 package nuxeo.zip.utils;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 import jakarta.inject.Inject;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,14 +34,18 @@ import org.nuxeo.common.utils.ZipUtils;
 import org.nuxeo.ecm.automation.AutomationService;
 import org.nuxeo.ecm.automation.test.AutomationFeature;
 import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.ecm.core.api.impl.blob.AbstractBlob;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
 import org.nuxeo.ecm.core.event.EventService;
 import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
 import org.nuxeo.ecm.core.test.annotations.Granularity;
 import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -45,6 +64,8 @@ import org.nuxeo.runtime.transaction.TransactionHelper;
 @Deploy("nuxeo.zip.utils.nuxeo-zip-utils-core:disable-listeners-contrib.xml")
 public class TestZipDocuments {
 
+    private static final Log log = LogFactory.getLog(TestZipDocuments.class);
+
     public static final String VALID_ZIP = "valid-zip.zip";
 
     // valid-zip.zip test file contain path to a main folder, but default UnzipToDocuments will create one, named by the
@@ -130,6 +151,258 @@ public class TestZipDocuments {
         }
     }
 
+    @Test
+    public void testWithZip1Streaming() throws IOException {
+
+        File f = FileUtils.getResourceFileFromContext(VALID_ZIP);
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        coreSession.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        ZipFolderish zipFolderish = new ZipFolderish(mainUnzippedFolderDoc);
+        Blob zipped = zipFolderish.runStreaming(false);
+        assertNotNull(zipped);
+        assertEquals(-1, zipped.getLength());
+
+        // Nothing is written until the blob is read
+        List<String> entries = new ArrayList<String>();
+        try (ZipInputStream zipIn = new ZipInputStream(zipped.getStream())) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                entries.add(entry.getName());
+            }
+        }
+        for (String path : PATHS_IN_ZIP1) {
+            assertTrue("Missing entry: " + path, entries.contains(path));
+        }
+
+        // Same archive when written to an output stream
+        File out = File.createTempFile("zipfolderish", ".zip");
+        out.deleteOnExit();
+        try (FileOutputStream fileOut = new FileOutputStream(out)) {
+            zipped.transferTo(fileOut);
+        }
+        assertEquals(entries, ZipUtils.getEntryNames(out));
+    }
+
+    @Test
+    public void testWithZip1SingleQuery() throws IOException {
+
+        File f = FileUtils.getResourceFileFromContext(VALID_ZIP);
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        // Duplicates must be renamed the same way
+        DocumentModel parent = coreSession.getDocument(new PathRef("/test-unzip/valid-zip/valid-zip/f2"));
+        DocumentModel image = coreSession.getDocument(new PathRef("/test-unzip/valid-zip/valid-zip/f2/Picture.jpg"));
+        coreSession.copy(image.getRef(), parent.getRef(), image.getName());
+
+        coreSession.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        List<String> expected = ZipUtils.getEntryNames(new ZipFolderish(mainUnzippedFolderDoc).run().getFile());
+
+        ZipFolderish zipFolderish = new ZipFolderish(mainUnzippedFolderDoc);
+        zipFolderish.setSingleQuery(true);
+        Blob zipped = zipFolderish.run();
+        assertNotNull(zipped);
+
+        List<String> entries = ZipUtils.getEntryNames(zipped.getFile());
+        for (String path : PATHS_IN_ZIP1) {
+            assertTrue("Missing entry: " + path, entries.contains(path));
+        }
+        assertTrue(entries.contains("valid-zip/valid-zip/f2/Picture-2.jpg"));
+        assertEquals(new HashSet<>(expected), new HashSet<>(entries));
+        assertEquals(expected.size(), entries.size());
+    }
+
+    @Test
+    /**
+     * This test validates the export of a wide and deep tree. Run it with the benchmark profile (-Pbenchmark, a million
+     * documents with -Xmx512m) to check the recursive export does not need more memory with the number of documents.
+     */
+    public void testWithManyDocuments() throws IOException {
+
+        int count = Integer.getInteger("zipUtils.benchmark.documents", 2000);
+        int depth = 200;
+        File zip = Framework.createTempFile("many-documents", ".zip");
+        try {
+            StringBuilder deepPath = new StringBuilder("many/deep/");
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+                for (int i = 0; i < count; i++) {
+                    out.putNextEntry(new ZipEntry("many/w" + (i / 1000) + "/entry-" + i + ".txt"));
+                    out.write(("entry " + i).getBytes(StandardCharsets.US_ASCII));
+                    out.closeEntry();
+                }
+                for (int i = 0; i < depth; i++) {
+                    deepPath.append("d").append(i).append("/");
+                }
+                deepPath.append("leaf.txt");
+                out.putNextEntry(new ZipEntry(deepPath.toString()));
+                out.write("leaf".getBytes(StandardCharsets.US_ASCII));
+                out.closeEntry();
+            }
+
+            UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(zip));
+            unzipToDocs.setBatchMode(true);
+            DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+            assertNotNull(mainUnzippedFolderDoc);
+
+            coreSession.save();
+            TransactionHelper.commitOrRollbackTransaction();
+            TransactionHelper.startTransaction();
+
+            Blob zipped = new ZipFolderish(mainUnzippedFolderDoc).runStreaming(false);
+            long start = System.nanoTime();
+            int files = 0;
+            boolean leafFound = false;
+            try (ZipInputStream zipIn = new ZipInputStream(zipped.getStream())) {
+                ZipEntry entry;
+                while ((entry = zipIn.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        files++;
+                        leafFound |= entry.getName().endsWith(deepPath.toString());
+                    }
+                }
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            Runtime runtime = Runtime.getRuntime();
+            long usedMB = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+            log.info(String.format("Exported %d documents in %d ms, %d MB used of %d MB", files, millis, usedMB,
+                    runtime.maxMemory() / (1024 * 1024)));
+            assertEquals(count + 1, files);
+            assertTrue("Missing entry: " + deepPath, leafFound);
+        } finally {
+            zip.delete();
+        }
+    }
+
+    @Test
+    public void testWithZip1CallbackChain() throws IOException {
+
+        File f = FileUtils.getResourceFileFromContext(VALID_ZIP);
+        UnzipToDocuments unzipToDocs = new UnzipToDocuments(testDocsFolder, new FileBlob(f));
+        DocumentModel mainUnzippedFolderDoc = unzipToDocs.run();
+        assertNotNull(mainUnzippedFolderDoc);
+
+        coreSession.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        // By default, the blobs are read from the query, without loading the documents
+        Blob projected = new ZipFolderish(mainUnzippedFolderDoc).run();
+
+        ZipFolderish zipFolderish = new ZipFolderish(mainUnzippedFolderDoc);
+        zipFolderish.setGetBlolbCallbackChain("Document.GetBlob");
+        Blob loaded = zipFolderish.run();
+
+        List<String> entries = ZipUtils.getEntryNames(projected.getFile());
+        assertEquals(new HashSet<>(ZipUtils.getEntryNames(loaded.getFile())), new HashSet<>(entries));
+        for (String path : PATHS_IN_ZIP1) {
+            assertTrue("Missing entry: " + path, entries.contains(path));
+        }
+        try (ZipFile projectedZip = new ZipFile(projected.getFile());
+                ZipFile loadedZip = new ZipFile(loaded.getFile())) {
+            String path = "valid-zip/valid-zip/f2/Picture.jpg";
+            assertEquals(loadedZip.getEntry(path).getCrc(), projectedZip.getEntry(path).getCrc());
+        }
+    }
+
+    /**
+     * A blob of a slow store: each read waits before returning the stream.
+     */
+    protected static class SlowBlob extends AbstractBlob {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final Blob blob;
+
+        protected final long latencyMillis;
+
+        protected SlowBlob(Blob blob, long latencyMillis) {
+            this.blob = blob;
+            this.latencyMillis = latencyMillis;
+            setFilename(blob.getFilename());
+            setMimeType(blob.getMimeType());
+        }
+
+        @Override
+        public InputStream getStream() throws IOException {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            return blob.getStream();
+        }
+
+        @Override
+        public long getLength() {
+            return blob.getLength();
+        }
+    }
+
+    protected ZipFolderish newSlowZipFolderish(DocumentModel folder, long latencyMillis) {
+        return new ZipFolderish(folder) {
+            @Override
+            protected Blob getRowBlob(Map<String, Serializable> row) throws IOException {
+                Blob blob = super.getRowBlob(row);
+                return blob == null ? null : new SlowBlob(blob, latencyMillis);
+            }
+        };
+    }
+
+    @Test
+    public void testPrefetchWithSlowBlobs() throws IOException {
+
+        int count = 20;
+        long latency = 100;
+        for (int i = 0; i < count; i++) {
+            DocumentModel doc = coreSession.createDocumentModel(testDocsFolder.getPathAsString(), "file-" + i, "File");
+            doc.setPropertyValue("dc:title", "file-" + i);
+            Blob blob = Blobs.createBlob("content " + i);
+            blob.setFilename("file-" + i + ".txt");
+            doc.setPropertyValue("file:content", (Serializable) blob);
+            coreSession.createDocument(doc);
+        }
+        coreSession.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        long start = System.nanoTime();
+        Blob sequential = newSlowZipFolderish(testDocsFolder, latency).run();
+        long sequentialMillis = (System.nanoTime() - start) / 1_000_000;
+
+        ZipFolderish zipFolderish = newSlowZipFolderish(testDocsFolder, latency);
+        zipFolderish.setPrefetch(10, 0);
+        start = System.nanoTime();
+        Blob prefetched = zipFolderish.run();
+        long prefetchedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        log.info(String.format("%d blobs with %d ms latency: %d ms sequential, %d ms with prefetch", count, latency,
+                sequentialMillis, prefetchedMillis));
+        assertTrue(sequentialMillis >= count * latency);
+        assertTrue("No gain with prefetch: " + prefetchedMillis + " ms", prefetchedMillis < sequentialMillis / 2);
+
+        // Same entries, in the same order, with the same content
+        List<String> entries = ZipUtils.getEntryNames(prefetched.getFile());
+        assertEquals(ZipUtils.getEntryNames(sequential.getFile()), entries);
+        assertTrue(entries.contains("test-unzip/file-7.txt"));
+        try (ZipFile zip = new ZipFile(prefetched.getFile())) {
+            try (InputStream in = zip.getInputStream(zip.getEntry("test-unzip/file-7.txt"))) {
+                assertEquals("content 7", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
     @Test
     public void testWithZip1AndDuplicate() throws IOException {
 
@@ -174,4 +447,50 @@ public class TestZipDocuments {
         assertTrue(entries.contains("valid-zip/valid-zip/f2/Picture-4.jpg"));
 
     }
+
+    @Test
+    public void testStreamingErrorAndEarlyClose() throws Exception {
+
+        for (int i = 0; i < 20; i++) {
+            DocumentModel doc = coreSession.createDocumentModel(testDocsFolder.getPathAsString(), "file-" + i, "File");
+            doc.setPropertyValue("dc:title", "file-" + i);
+            Blob blob = Blobs.createBlob("content " + i);
+            blob.setFilename("file-" + i + ".txt");
+            doc.setPropertyValue("file:content", (Serializable) blob);
+            coreSession.createDocument(doc);
+        }
+        coreSession.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        // A failure of the writer is an error for the reader, never the end of the archive
+        ZipFolderish failing = new ZipFolderish(testDocsFolder) {
+            @Override
+            protected Blob getRowBlob(Map<String, Serializable> row) throws IOException {
+                throw new NuxeoException("Unavailable blob");
+            }
+        };
+        try (InputStream in = failing.runStreaming(false).getStream()) {
+            in.readAllBytes();
+            fail("The archive should not look complete");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // Closing the stream stops the writer
+        Blob zipped = newSlowZipFolderish(testDocsFolder, 100).runStreaming(false);
+        String writerName = "ZipFolderish-" + zipped.getFilename();
+        try (InputStream in = zipped.getStream()) {
+            assertTrue(in.read() >= 0);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (isThreadAlive(writerName) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(isThreadAlive(writerName));
+    }
+
+    protected boolean isThreadAlive(String name) {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals(name) && t.isAlive());
+    }
 }